@@ -0,0 +1,290 @@
+package LARA;
+
+import core.Digraph;
+import core.Grammar;
+import core.Rule;
+import core.TerminalSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+
+/**
+ * Builds the LALR(1) collection straight from the LR(0) automaton. Lookaheads
+ * are computed with the DeRemer-Pennello relations: DR and reads give Read,
+ * includes gives Follow, and lookback carries Follow to the reduce items. The
+ * canonical LR(1) collection is never built.
+ */
+public class LALR1Builder {
+
+    private final Grammar grammar;
+
+    private final ArrayList<Rule> rules;
+
+    // an LR(0) item is coded as ruleOffset[rule] + dot
+    private final int[] ruleOffset;
+
+    private final int[] itemRule;
+
+    private final ArrayList<int[]> closures = new ArrayList<>();
+
+    private final ArrayList<LinkedHashMap<Integer, Integer>> gotos = new ArrayList<>();
+
+    // nonterminal transitions (transitionState[t], transitionSymbol[t])
+    private int[] transitionState;
+
+    private int[] transitionSymbol;
+
+    private ArrayList<HashMap<Integer, Integer>> transitionIndex;
+
+    public LALR1Builder(Grammar grammar) {
+        this.grammar = grammar;
+        this.rules = grammar.getRules();
+        ruleOffset = new int[rules.size() + 1];
+        for (int r = 0; r < rules.size(); r++) {
+            ruleOffset[r + 1] = ruleOffset[r] + rules.get(r).getRightIds().length + 1;
+        }
+        itemRule = new int[ruleOffset[rules.size()]];
+        for (int r = 0; r < rules.size(); r++) {
+            Arrays.fill(itemRule, ruleOffset[r], ruleOffset[r + 1], r);
+        }
+    }
+
+    public ArrayList<LR1State> build() {
+        createLR0Automaton();
+        indexTransitions();
+
+        TerminalSet[] follow = computeRead();
+        Digraph.traverse(includes(), follow);
+
+        return createStates(follow);
+    }
+
+    private void createLR0Automaton() {
+        HashMap<Kernel, Integer> states = new HashMap<>();
+        ArrayList<int[]> kernels = new ArrayList<>();
+        kernels.add(new int[]{ruleOffset[0]});
+        states.put(new Kernel(kernels.get(0)), 0);
+
+        int[] added = new int[grammar.getSymbolCount()];
+        for (int i = 0; i < kernels.size(); i++) {
+            int[] closure = closure(kernels.get(i), added, i + 1);
+            closures.add(closure);
+
+            LinkedHashMap<Integer, ArrayList<Integer>> next = new LinkedHashMap<>();
+            for (int item : closure) {
+                int symbol = symbolAfterDot(item);
+                if (symbol != -1) {
+                    next.computeIfAbsent(symbol, k -> new ArrayList<>()).add(item + 1);
+                }
+            }
+
+            LinkedHashMap<Integer, Integer> transition = new LinkedHashMap<>();
+            for (int symbol : next.keySet()) {
+                ArrayList<Integer> items = next.get(symbol);
+                int[] kernel = new int[items.size()];
+                for (int k = 0; k < kernel.length; k++) {
+                    kernel[k] = items.get(k);
+                }
+                Arrays.sort(kernel);
+                Kernel key = new Kernel(kernel);
+                Integer target = states.get(key);
+                if (target == null) {
+                    target = kernels.size();
+                    kernels.add(kernel);
+                    states.put(key, target);
+                }
+                transition.put(symbol, target);
+            }
+            gotos.add(transition);
+        }
+    }
+
+    private int[] closure(int[] kernel, int[] added, int stamp) {
+        int[] items = Arrays.copyOf(kernel, Math.max(8, kernel.length * 2));
+        int size = kernel.length;
+        for (int i = 0; i < size; i++) {
+            int symbol = symbolAfterDot(items[i]);
+            if (symbol != -1 && grammar.isVariable(symbol) && added[symbol] != stamp) {
+                added[symbol] = stamp;
+                for (Rule rule : grammar.getRuledByLeftVariable(symbol)) {
+                    if (size == items.length) {
+                        items = Arrays.copyOf(items, size * 2);
+                    }
+                    items[size++] = ruleOffset[rule.getIndex()];
+                }
+            }
+        }
+        return Arrays.copyOf(items, size);
+    }
+
+    private int symbolAfterDot(int item) {
+        int rule = itemRule[item];
+        int dot = item - ruleOffset[rule];
+        int[] rightSide = rules.get(rule).getRightIds();
+        return dot == rightSide.length ? -1 : rightSide[dot];
+    }
+
+    private void indexTransitions() {
+        ArrayList<Integer> from = new ArrayList<>();
+        ArrayList<Integer> symbols = new ArrayList<>();
+        transitionIndex = new ArrayList<>();
+        for (int state = 0; state < gotos.size(); state++) {
+            HashMap<Integer, Integer> index = new HashMap<>();
+            for (int symbol : gotos.get(state).keySet()) {
+                if (grammar.isVariable(symbol)) {
+                    index.put(symbol, from.size());
+                    from.add(state);
+                    symbols.add(symbol);
+                }
+            }
+            transitionIndex.add(index);
+        }
+        transitionState = new int[from.size()];
+        transitionSymbol = new int[from.size()];
+        for (int t = 0; t < transitionState.length; t++) {
+            transitionState[t] = from.get(t);
+            transitionSymbol[t] = symbols.get(t);
+        }
+    }
+
+    /**
+     * Read(p, A): the terminals directly readable after the transition (DR),
+     * closed over the reads relation.
+     */
+    private TerminalSet[] computeRead() {
+        int count = transitionState.length;
+        TerminalSet[] read = new TerminalSet[count];
+        int[][] reads = new int[count][];
+        for (int t = 0; t < count; t++) {
+            int target = gotos.get(transitionState[t]).get(transitionSymbol[t]);
+            read[t] = new TerminalSet(grammar.getTerminalCount());
+            ArrayList<Integer> edges = new ArrayList<>();
+            for (int symbol : gotos.get(target).keySet()) {
+                if (grammar.isTerminal(symbol)) {
+                    read[t].add(symbol);
+                } else if (grammar.isNullable(symbol)) {
+                    edges.add(transitionIndex.get(target).get(symbol));
+                }
+            }
+            for (int item : closures.get(target)) {
+                if (itemRule[item] == 0 && symbolAfterDot(item) == -1) {
+                    read[t].add(grammar.getEndMarkerId());
+                }
+            }
+            reads[t] = toArray(edges);
+        }
+        Digraph.traverse(reads, read);
+        return read;
+    }
+
+    /**
+     * (p', A) includes (p, B) when B -> beta A gamma, gamma is nullable and
+     * p' is reached from p by beta.
+     */
+    private int[][] includes() {
+        ArrayList<ArrayList<Integer>> edges = new ArrayList<>();
+        for (int t = 0; t < transitionState.length; t++) {
+            edges.add(new ArrayList<>());
+        }
+        for (int t = 0; t < transitionState.length; t++) {
+            for (Rule rule : grammar.getRuledByLeftVariable(transitionSymbol[t])) {
+                int[] rightSide = rule.getRightIds();
+                int state = transitionState[t];
+                for (int i = 0; i < rightSide.length; i++) {
+                    if (grammar.isVariable(rightSide[i]) && grammar.isNullable(rule, i + 1)) {
+                        edges.get(transitionIndex.get(state).get(rightSide[i])).add(t);
+                    }
+                    state = gotos.get(state).get(rightSide[i]);
+                }
+            }
+        }
+        int[][] includes = new int[edges.size()][];
+        for (int t = 0; t < includes.length; t++) {
+            includes[t] = toArray(edges.get(t));
+        }
+        return includes;
+    }
+
+    /**
+     * Every item A -> alpha . beta that starts at the transition (p, A) gets
+     * Follow(p, A); for reduce items this is the lookback relation.
+     */
+    private ArrayList<LR1State> createStates(TerminalSet[] follow) {
+        ArrayList<HashMap<Integer, TerminalSet>> lookaheads = new ArrayList<>();
+        for (int state = 0; state < closures.size(); state++) {
+            HashMap<Integer, TerminalSet> stateLookaheads = new HashMap<>();
+            for (int item : closures.get(state)) {
+                stateLookaheads.put(item, new TerminalSet(grammar.getTerminalCount()));
+            }
+            lookaheads.add(stateLookaheads);
+        }
+
+        TerminalSet end = new TerminalSet(grammar.getTerminalCount());
+        end.add(grammar.getEndMarkerId());
+        propagate(0, 0, end, lookaheads);
+        for (int t = 0; t < transitionState.length; t++) {
+            for (Rule rule : grammar.getRuledByLeftVariable(transitionSymbol[t])) {
+                propagate(transitionState[t], rule.getIndex(), follow[t], lookaheads);
+            }
+        }
+
+        ArrayList<LR1State> collection = new ArrayList<>();
+        for (int state = 0; state < closures.size(); state++) {
+            LinkedHashSet<LR1Item> items = new LinkedHashSet<>();
+            for (int item : closures.get(state)) {
+                int rule = itemRule[item];
+                items.add(new LR1Item(rules.get(rule), item - ruleOffset[rule], lookaheads.get(state).get(item)));
+            }
+            collection.add(new LR1State(items));
+        }
+        for (int state = 0; state < closures.size(); state++) {
+            for (int symbol : gotos.get(state).keySet()) {
+                collection.get(state).getTransition().put(symbol, collection.get(gotos.get(state).get(symbol)));
+            }
+        }
+        return collection;
+    }
+
+    private void propagate(int state, int rule, TerminalSet lookahead, ArrayList<HashMap<Integer, TerminalSet>> lookaheads) {
+        int[] rightSide = rules.get(rule).getRightIds();
+        for (int dot = 0; ; dot++) {
+            lookaheads.get(state).get(ruleOffset[rule] + dot).addAll(lookahead);
+            if (dot == rightSide.length) {
+                return;
+            }
+            state = gotos.get(state).get(rightSide[dot]);
+        }
+    }
+
+    private static int[] toArray(ArrayList<Integer> list) {
+        int[] array = new int[list.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = list.get(i);
+        }
+        return array;
+    }
+
+    private static final class Kernel {
+
+        private final int[] items;
+
+        private final int hash;
+
+        Kernel(int[] items) {
+            this.items = items;
+            this.hash = Arrays.hashCode(items);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Kernel && Arrays.equals(items, ((Kernel) o).items);
+        }
+    }
+}
@@ -1,8 +1,8 @@
 package LARA;
 
+import core.Grammar;
 import core.Rule;
 import java.util.Arrays;
-import java.util.Objects;
 
 
 public class LR0Item extends Rule {
@@ -11,16 +11,11 @@ public class LR0Item extends Rule {
 
   
     public LR0Item(Rule r) {
-        super(r.getLeftSide(), r.getRightSide());
-        int finished = 0;
-        if (r.getRightSide().length == 1 && r.getRightSide()[0].equals("epsilon")) {
-            finished = 1;
-        }
-        this.dotPointer = finished;
+        this(r, 0);
     }
 
-    public LR0Item(String leftSide, String[] rightSide, int dotPointer) {
-        super(leftSide, rightSide);
+    public LR0Item(Rule r, int dotPointer) {
+        super(r);
         this.dotPointer = dotPointer;
     }
 
@@ -35,8 +30,8 @@ public class LR0Item extends Rule {
     public int hashCode() {
         int hash = 7;
         hash = 89 * hash + this.dotPointer;
-        hash = 89 * hash + Objects.hashCode(this.leftSide);
-        hash = 89 * hash + Arrays.deepHashCode(this.rightSide);
+        hash = 89 * hash + this.leftId;
+        hash = 89 * hash + Arrays.hashCode(this.rightIds);
         return hash;
     }
 
@@ -56,10 +51,10 @@ public class LR0Item extends Rule {
         if (this.dotPointer != other.dotPointer) {
             return false;
         }
-        if (!this.leftSide.equals(other.leftSide)) {
+        if (this.leftId != other.leftId) {
             return false;
         }
-        if (!Arrays.equals(this.rightSide, other.rightSide)) {
+        if (!Arrays.equals(this.rightIds, other.rightIds)) {
             return false;
         }
         return true;
@@ -68,6 +63,9 @@ public class LR0Item extends Rule {
     @Override
     public String toString() {
         String str = leftSide + " -> ";
+        if (rightIds.length == 0) {
+            return str + Grammar.EPSILON + ".";
+        }
         for (int i = 0; i < rightSide.length; i++) {
             if (i == dotPointer) {
                 str += ".";
@@ -89,7 +87,7 @@ public class LR0Item extends Rule {
     }
 
     boolean goTo() {
-        if (dotPointer >= rightSide.length) {
+        if (dotPointer >= rightIds.length) {
             return false;
         }
         dotPointer++;
@@ -97,10 +95,10 @@ public class LR0Item extends Rule {
     }
 
 
-    String getCurrentTerminal() {
-        if(dotPointer == rightSide.length){
-            return null;
+    int getCurrent() {
+        if(dotPointer == rightIds.length){
+            return -1;
         }
-        return rightSide[dotPointer];
+        return rightIds[dotPointer];
     }
 }
@@ -1,35 +1,43 @@
 package LARA;
 
+import core.Grammar;
+import core.Rule;
+import core.TerminalSet;
 import java.util.Arrays;
-import java.util.HashSet;
 import java.util.Objects;
 
 
 public class LR1Item {
 
-    private HashSet<String> lookahead;
+    private TerminalSet lookahead;
 
-    private String leftSide;
+    private Rule rule;
 
-    private String[] rightSide;
+    private int ruleIndex;
+
+    private int leftSide;
+
+    private int[] rightSide;
 
     private int dotPointer;
 
-    public LR1Item(String leftSide, String[] rightSide, int dotPointer, HashSet<String> lookahead){
-        this.leftSide = leftSide;
-        this.rightSide = rightSide;
+    public LR1Item(Rule rule, int dotPointer, TerminalSet lookahead){
+        this.rule = rule;
+        this.ruleIndex = rule.getIndex();
+        this.leftSide = rule.getLeftId();
+        this.rightSide = rule.getRightIds();
         this.dotPointer = dotPointer;
         this.lookahead = lookahead;
     }
 
-    public String getCurrent(){
+    public int getCurrent(){
         if(dotPointer == rightSide.length){
-            return null;
+            return -1;
         }
         return rightSide[dotPointer];
     }
 
-   
+
     boolean goTo() {
         if (dotPointer >= rightSide.length) {
             return false;
@@ -38,83 +46,86 @@ public class LR1Item {
         return true;
     }
 
-  
+
     public int getDotPointer() {
         return dotPointer;
     }
 
-    
-    public String[] getRightSide() {
+
+    public int[] getRightSide() {
         return rightSide;
     }
 
-  
-    public HashSet<String> getLookahead() {
+
+    public TerminalSet getLookahead() {
         return lookahead;
     }
 
-   
-    public String getLeftSide() {
+
+    public int getLeftSide() {
         return leftSide;
     }
 
 
-    public void setLookahead(HashSet<String> lookahead) {
-        this.lookahead = lookahead;
+    public Rule getRule() {
+        return rule;
+    }
+
+
+    public int getRuleIndex() {
+        return ruleIndex;
     }
 
-   
-    public void setRightSide(String[] rightSide) {
-        this.rightSide = rightSide;
+
+    public void setLookahead(TerminalSet lookahead) {
+        this.lookahead = lookahead;
     }
 
-  
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
         LR1Item lr1Item = (LR1Item) o;
         return dotPointer == lr1Item.dotPointer &&
+                leftSide == lr1Item.leftSide &&
                 Objects.equals(lookahead, lr1Item.lookahead) &&
-                Objects.equals(leftSide, lr1Item.leftSide) &&
                 Arrays.equals(rightSide, lr1Item.rightSide);
     }
 
-  
+
     public boolean equalLR0(LR1Item item){
-        return leftSide.equals(item.getLeftSide()) &&
+        return leftSide == item.getLeftSide() &&
                Arrays.equals(rightSide,item.getRightSide()) &&
                dotPointer == item.getDotPointer();
     }
 
- 
+
     @Override
     public int hashCode() {
         int hash = 7;
         hash = 31 * hash + this.dotPointer;
-        hash = 31 * hash + Objects.hashCode(this.leftSide);
-        hash = 31 * hash + Arrays.deepHashCode(this.rightSide);
+        hash = 31 * hash + this.leftSide;
+        hash = 31 * hash + Arrays.hashCode(this.rightSide);
         hash = 31 * hash + Objects.hashCode(this.lookahead);
         return hash;
     }
 
-  
-    @Override
-    public String toString() {
-        String str = leftSide + " -> ";
-        for (int i = 0; i < rightSide.length; i++) {
-            if (i == dotPointer) {
-                str += ".";
-            }
-            str += rightSide[i];
-            if(i != rightSide.length - 1){
-                str+= " ";
+
+    public String toString(Grammar grammar) {
+        StringBuilder str = new StringBuilder(new LR0Item(rule, dotPointer).toString());
+        str.append(" , [");
+        for (int t = lookahead.next(0); t >= 0; t = lookahead.next(t + 1)) {
+            if (t != lookahead.next(0)) {
+                str.append(", ");
             }
+            str.append(grammar.getSymbol(t));
         }
-        if (rightSide.length == dotPointer) {
-            str += ".";
-        }
-        str += " , " + lookahead;
-        return str;
+        return str.append("]").toString();
+    }
+
+    @Override
+    public String toString() {
+        return new LR0Item(rule, dotPointer) + " , " + lookahead;
     }
 }
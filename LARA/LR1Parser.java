@@ -1,18 +1,31 @@
 package LARA;
 
-import core.Action;
-import core.ActionType;
 import core.Grammar;
 import core.LRParser;
+import core.ParseTables;
 import core.Rule;
+import core.TerminalSet;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 
 public class LR1Parser extends LRParser {
 
     private ArrayList<LR1State> canonicalCollection;
+
+    private HashMap<LR1State, Integer> stateIndex;
+
+    // dense tables while they are being filled, packed into tables afterwards
+    private int[][] actions;
+
+    private int[][] goTos;
+
+    // every action of the conflicting cells, null where there is none
+    private int[][][] conflicts;
    
     public LR1Parser(Grammar grammar){
         super(grammar);
@@ -20,44 +33,36 @@ public class LR1Parser extends LRParser {
 
     protected void createStatesForCLR1() {
         canonicalCollection = new ArrayList<>();
+        stateIndex = null;
         HashSet<LR1Item> start = new HashSet<>();
         Rule startRule = grammar.getRules().get(0);
-        HashSet<String> startLockahead = new HashSet<>();
-        startLockahead.add("$");
-        start.add(new LR1Item(startRule.getLeftSide(),startRule.getRightSide(),0,startLockahead));
+        TerminalSet startLockahead = new TerminalSet(grammar.getTerminalCount());
+        startLockahead.add(grammar.getEndMarkerId());
+        start.add(new LR1Item(startRule,0,startLockahead));
 
         LR1State startState = new LR1State(grammar, start);
         canonicalCollection.add(startState);
 
+        // states are looked up by their kernel before any closure is computed
+        HashMap<HashSet<LR1Item>, LR1State> states = new HashMap<>();
+        states.put(start, startState);
+
         for (int i = 0; i < canonicalCollection.size(); i++) {
-            HashSet<String> stringWithDot = new HashSet<>();
+            LinkedHashMap<Integer, HashSet<LR1Item>> kernels = new LinkedHashMap<>();
             for (LR1Item item : canonicalCollection.get(i).getItems()) {
-                if (item.getCurrent() != null) {
-                    stringWithDot.add(item.getCurrent());
+                if (item.getCurrent() != -1) {
+                    kernels.computeIfAbsent(item.getCurrent(), k -> new HashSet<>())
+                            .add(new LR1Item(item.getRule(), item.getDotPointer() + 1, item.getLookahead()));
                 }
             }
-            for (String str : stringWithDot) {
-                HashSet<LR1Item> nextStateItems = new HashSet<>();
-                for (LR1Item item : canonicalCollection.get(i).getItems()) {
-
-                    if (item.getCurrent() != null && item.getCurrent().equals(str)) {
-                        LR1Item temp = new LR1Item(item.getLeftSide(),item.getRightSide(),item.getDotPointer()+1,item.getLookahead());
-                        nextStateItems.add(temp);
-                    }
-                }
-                LR1State nextState = new LR1State(grammar, nextStateItems);
-                boolean isExist = false;
-                for (int j = 0; j < canonicalCollection.size(); j++) {
-                    if (canonicalCollection.get(j).getItems().containsAll(nextState.getItems())
-                            && nextState.getItems().containsAll(canonicalCollection.get(j).getItems())) {
-                        isExist = true;
-                        canonicalCollection.get(i).getTransition().put(str, canonicalCollection.get(j));
-                    }
-                }
-                if (!isExist) {
+            for (Map.Entry<Integer, HashSet<LR1Item>> entry : kernels.entrySet()) {
+                LR1State nextState = states.get(entry.getValue());
+                if (nextState == null) {
+                    nextState = new LR1State(grammar, entry.getValue());
+                    states.put(entry.getValue(), nextState);
                     canonicalCollection.add(nextState);
-                    canonicalCollection.get(i).getTransition().put(str, nextState);
                 }
+                canonicalCollection.get(i).getTransition().put(entry.getKey(), nextState);
             }
         }
 
@@ -77,114 +82,133 @@ public class LR1Parser extends LRParser {
 
   
     public void createStatesForLALR1(){
-        createStatesForCLR1();
-        ArrayList<LR1State> temp = new ArrayList<>();
-        for (int i = 0; i < canonicalCollection.size(); i++) {
-            HashSet<String> lookahead = new HashSet<>();
-            HashSet<LR0Item> itemsi = new HashSet<>();
-            for(LR1Item item:canonicalCollection.get(i).getItems()){
-                itemsi.add(new LR0Item(item.getLeftSide(),item.getRightSide(),item.getDotPointer()));
-            }
-            for (int j = i+1; j < canonicalCollection.size(); j++) {
-                HashSet<LR0Item> itemsj = new HashSet<>();
-                for(LR1Item item:canonicalCollection.get(j).getItems()){
-                    itemsj.add(new LR0Item(item.getLeftSide(),item.getRightSide(),item.getDotPointer()));
-                }
-                if(itemsi.containsAll(itemsj) && itemsj.containsAll(itemsi)){
-                    for(LR1Item itemi : canonicalCollection.get(i).getItems()){
-                        for(LR1Item itemj : canonicalCollection.get(j).getItems()){
-                            if(itemi.equalLR0(itemj)){
-                                itemi.getLookahead().addAll(itemj.getLookahead());
-                                break;
-                            }
-                        }
-                    }
-                    for (int k = 0; k < canonicalCollection.size(); k++) {
-                        for(String s : canonicalCollection.get(k).getTransition().keySet()){
-                            if(canonicalCollection.get(k).getTransition().get(s).getItems().containsAll(canonicalCollection.get(j).getItems()) &&
-                                    canonicalCollection.get(j).getItems().containsAll(canonicalCollection.get(k).getTransition().get(s).getItems())){
-                                canonicalCollection.get(k).getTransition().put(s,canonicalCollection.get(i));
-                            }
-                        }
-                    }
-                    canonicalCollection.remove(j);
-                    j--;
-
-                }
-            }
-            temp.add(canonicalCollection.get(i));
-        }
-        canonicalCollection = temp;
+        canonicalCollection = new LALR1Builder(grammar).build();
+        stateIndex = null;
     }
 
    
     
     protected void createGoToTable() {
-        goToTable = new HashMap[canonicalCollection.size()];
-        for (int i = 0; i < goToTable.length; i++) {
-            goToTable[i] = new HashMap<>();
+        goTos = new int[canonicalCollection.size()][grammar.getVariableCount()];
+        for (int i = 0; i < goTos.length; i++) {
+            Arrays.fill(goTos[i], -1);
         }
         for (int i = 0; i < canonicalCollection.size(); i++) {
-            for (String s : canonicalCollection.get(i).getTransition().keySet()) {
+            for (int s : canonicalCollection.get(i).getTransition().keySet()) {
                 if (grammar.isVariable(s)) {
-                    goToTable[i].put(s, findStateIndex(canonicalCollection.get(i).getTransition().get(s)));
+                    goTos[i][s - grammar.getStartId()] = findStateIndex(canonicalCollection.get(i).getTransition().get(s));
                 }
             }
         }
     }
 
     private int findStateIndex(LR1State state) {
-        for (int i = 0; i < canonicalCollection.size(); i++) {
-            if (canonicalCollection.get(i).equals(state)) {
-                return i;
+        if (stateIndex == null) {
+            stateIndex = new HashMap<>();
+            for (int i = 0; i < canonicalCollection.size(); i++) {
+                stateIndex.put(canonicalCollection.get(i), i);
             }
         }
-        return -1;
+        Integer index = stateIndex.get(state);
+        return index == null ? -1 : index;
     }
 
     
    
     private boolean createActionTable() {
-        actionTable = new HashMap[canonicalCollection.size()];
-        for (int i = 0; i < goToTable.length; i++) {
-            actionTable[i] = new HashMap<>();
-        }
+        actions = new int[canonicalCollection.size()][grammar.getTerminalCount()];
+        conflicts = new int[canonicalCollection.size()][][];
+        boolean ok = fillActionTable();
+        tables = ParseTables.pack(grammar, actions, goTos, conflicts);
+        actions = null;
+        goTos = null;
+        conflicts = null;
+        return ok;
+    }
+
+    /**
+     * Fills the table, keeping every action of a conflicting cell for GLR.
+     *
+     * @return false if there is a conflict
+     */
+    private boolean fillActionTable() {
+        boolean ok = true;
         for (int i = 0; i < canonicalCollection.size(); i++) {
-            for (String s : canonicalCollection.get(i).getTransition().keySet()) {
-                if (grammar.getTerminals().contains(s)) {
-                    actionTable[i].put(s, new Action(ActionType.S, findStateIndex(canonicalCollection.get(i).getTransition().get(s))));
+            for (int s : canonicalCollection.get(i).getTransition().keySet()) {
+                if (grammar.isTerminal(s)) {
+                    actions[i][s] = ParseTables.shift(findStateIndex(canonicalCollection.get(i).getTransition().get(s)));
                 }
             }
         }
         for (int i = 0; i < canonicalCollection.size(); i++) {
             for (LR1Item item : canonicalCollection.get(i).getItems()) {
                 if (item.getDotPointer() == item.getRightSide().length) {
-                    if (item.getLeftSide().equals("S'")) {
-                        actionTable[i].put("$", new Action(ActionType.ACC, 0));
+                    if (item.getLeftSide() == grammar.getStartId()) {
+                        ok &= addAction(i, grammar.getEndMarkerId(), ParseTables.ACCEPT);
                     } else {
-                        Rule rule = new Rule(item.getLeftSide(), item.getRightSide().clone());
-                        int index = grammar.findRuleIndex(rule);
-                        Action action = new Action(ActionType.R, index);
-                        for (String str : item.getLookahead()) {
-                            if (actionTable[i].get(str) != null) {
-                                System.out.println("it has a REDUCE-" + actionTable[i].get(str).getType() + " confilct in state " + i);
-                                return false;
-                            } else {
-                                actionTable[i].put(str, action);
-                            }
+                        int action = ParseTables.reduce(item.getRuleIndex());
+                        TerminalSet lookahead = item.getLookahead();
+                        for (int terminal = lookahead.next(0); terminal >= 0; terminal = lookahead.next(terminal + 1)) {
+                            ok &= addAction(i, terminal, action);
                         }
                     }
                 }
             }
         }
-        return true;
+        return ok;
+    }
+
+    /**
+     * Adds a reduce or accept action to a cell. A cell with several actions
+     * lists them all, and the table holds the preferred one: a shift, then
+     * accept, then the reduction by the lowest rule.
+     *
+     * @return false if the cell already had another action
+     */
+    private boolean addAction(int state, int terminal, int action) {
+        int existing = actions[state][terminal];
+        if (existing == ParseTables.ERROR) {
+            actions[state][terminal] = action;
+            return true;
+        }
+        if (existing == action) {
+            return true;
+        }
+        System.out.println("it has a REDUCE-" + ParseTables.type(existing) + " confilct in state " + state);
+        if (conflicts[state] == null) {
+            conflicts[state] = new int[grammar.getTerminalCount()][];
+        }
+        int[] list = conflicts[state][terminal];
+        if (list == null) {
+            list = new int[]{existing};
+        }
+        for (int code : list) {
+            if (code == action) {
+                return false;
+            }
+        }
+        list = Arrays.copyOf(list, list.length + 1);
+        list[list.length - 1] = action;
+        // insertion into the sorted list
+        for (int k = list.length - 1; k > 0 && ParseTables.order(list[k]) < ParseTables.order(list[k - 1]); k--) {
+            int code = list[k];
+            list[k] = list[k - 1];
+            list[k - 1] = code;
+        }
+        conflicts[state][terminal] = list;
+        actions[state][terminal] = list[0];
+        return false;
+    }
+
+    public ArrayList<LR1State> getCanonicalCollection() {
+        return canonicalCollection;
     }
 
     public String canonicalCollectionStr() {
         String str = "Canonical Collection : \n";
         for (int i = 0; i < canonicalCollection.size(); i++) {
             str += "State " + i + " : \n";
-            str += canonicalCollection.get(i)+"\n";
+            str += canonicalCollection.get(i).toString(grammar)+"\n";
         }
         return str;
     }
@@ -2,78 +2,87 @@ package LARA;
 
 import core.Grammar;
 import core.Rule;
+import core.TerminalSet;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.LinkedHashSet;
+import java.util.Set;
 
 
 public class LR1State {
     private LinkedHashSet<LR1Item> items;
 
-    private HashMap<String, LR1State> transition;
+    private HashMap<Integer, LR1State> transition;
 
     public LR1State(Grammar grammar, HashSet<LR1Item> coreItems){
-        items = new LinkedHashSet<>(coreItems);
         transition = new HashMap<>();
-        closure(grammar);
+        closure(grammar, coreItems);
     }
 
-    private void closure(Grammar grammar) {
-        boolean changeFlag;
-        do {
-            changeFlag = false;
-            for(LR1Item item : items){
-                if(item.getDotPointer() != item.getRightSide().length && grammar.isVariable(item.getCurrent())){
-                    HashSet<String> lookahead = new HashSet<>();
-                    if(item.getDotPointer() == item.getRightSide().length - 1){
-                        lookahead.addAll(item.getLookahead());
-                    } else {
-                        HashSet<String> firstSet = grammar.computeFirst(item.getRightSide(), item.getDotPointer() + 1);
-                        if(firstSet.contains("epsilon")){
-                            firstSet.remove("epsilon");
-                            firstSet.addAll(item.getLookahead());
-                        }
-                        lookahead.addAll(firstSet);
-                    }
+    LR1State(LinkedHashSet<LR1Item> closedItems){
+        items = closedItems;
+        transition = new HashMap<>();
+    }
+
+    /**
+     * Worklist closure. Items are indexed by their LR(0) core (closure items
+     * always have the dot at 0, so the rule identifies the core); a lookahead
+     * that grows is merged in place and only that item is queued again.
+     */
+    private void closure(Grammar grammar, HashSet<LR1Item> coreItems) {
+        ArrayList<LR1Item> closed = new ArrayList<>(coreItems);
+        IdentityHashMap<Rule, LR1Item> byCore = new IdentityHashMap<>();
+        for (LR1Item item : coreItems) {
+            if (item.getDotPointer() == 0) {
+                byCore.put(item.getRule(), item);
+            }
+        }
 
-                    HashSet<Rule> rules = grammar.getRuledByLeftVariable(item.getCurrent());
-                    for(Rule rule : rules){
-                        String[] rhs = rule.getRightSide();
-                        int finished = 0;
-                        if (rhs.length == 1 && rhs[0].equals("epsilon")) {
-                            finished = 1;
-                        }
-                        HashSet<String> newLA = new HashSet<>(lookahead);
-                        LR1Item newItem = new LR1Item(rule.getLeftSide(), rhs, finished, newLA);
+        ArrayDeque<LR1Item> worklist = new ArrayDeque<>(closed);
+        Set<LR1Item> queued = Collections.newSetFromMap(new IdentityHashMap<>());
+        queued.addAll(closed);
+        while (!worklist.isEmpty()) {
+            LR1Item item = worklist.poll();
+            queued.remove(item);
+            if (item.getCurrent() == -1 || !grammar.isVariable(item.getCurrent())) {
+                continue;
+            }
+            TerminalSet first = grammar.getFirst(item.getRule(), item.getDotPointer() + 1);
+            boolean nullable = grammar.isNullable(item.getRule(), item.getDotPointer() + 1);
 
-                        boolean found = false;
-                        for (LR1Item existingItem : items) {
-                            if (newItem.equalLR0(existingItem)) {
-                                HashSet<String> existLA = existingItem.getLookahead();
-                                if (!existLA.containsAll(newLA)) {
-                                    items.remove(existingItem);
-                                    existLA.addAll(newLA);
-                                    items.add(existingItem);
-                                    changeFlag = true;
-                                }
-                                found = true;
-                                break;
-                            }
-                        }
-                        if (!found) {
-                            items.add(newItem);
-                            changeFlag = true;
-                        }
+            for (Rule rule : grammar.getRuledByLeftVariable(item.getCurrent())) {
+                LR1Item existing = byCore.get(rule);
+                if (existing == null) {
+                    TerminalSet lookahead = new TerminalSet(first);
+                    if (nullable) {
+                        lookahead.addAll(item.getLookahead());
+                    }
+                    LR1Item newItem = new LR1Item(rule, 0, lookahead);
+                    byCore.put(rule, newItem);
+                    closed.add(newItem);
+                    worklist.add(newItem);
+                    queued.add(newItem);
+                } else {
+                    boolean changed = existing.getLookahead().addAll(first);
+                    if (nullable) {
+                        changed |= existing.getLookahead().addAll(item.getLookahead());
+                    }
+                    if (changed && queued.add(existing)) {
+                        worklist.add(existing);
                     }
-
-                    if (changeFlag) break;
                 }
             }
-        } while (changeFlag);
+        }
+        // lookaheads are part of the item hash, so the set is filled only now
+        items = new LinkedHashSet<>(closed);
     }
 
    
-    public HashMap<String, LR1State> getTransition() {
+    public HashMap<Integer, LR1State> getTransition() {
         return transition;
     }
 
@@ -83,6 +92,14 @@ public class LR1State {
     }
 
     
+    public String toString(Grammar grammar) {
+        StringBuilder s = new StringBuilder();
+        for(LR1Item item : items){
+            s.append(item.toString(grammar)).append("\n");
+        }
+        return s.toString();
+    }
+
     @Override
     public String toString() {
         StringBuilder s = new StringBuilder();
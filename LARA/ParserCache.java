@@ -0,0 +1,220 @@
+package LARA;
+
+import core.CompiledParser;
+import core.GLRDriver;
+import core.Grammar;
+import core.ParseDriver;
+import core.ParseTables;
+import core.Recognizer;
+import core.Rule;
+import core.TableFile;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Caches the parse tables of grammars by a fingerprint of the grammar and
+ * the construction mode. Recently used tables are kept in memory, up to a
+ * fixed number of grammars; with a directory, every table is also saved
+ * there as a TableFile named by its fingerprint, so a later process loads it
+ * instead of building the LR automaton. Thread safe.
+ */
+public class ParserCache {
+
+    public enum Mode {
+        CLR1, LALR1
+    }
+
+    private final int capacity;
+
+    private final Path directory;
+
+    private final LinkedHashMap<String, ParseTables> memory;
+
+    private long memoryHits;
+
+    private long diskHits;
+
+    private long misses;
+
+    /**
+     * @param capacity the number of tables kept in memory
+     * @param directory the directory of the table files, or null to cache
+     * in memory only
+     */
+    public ParserCache(int capacity, Path directory) {
+        this.capacity = capacity;
+        this.directory = directory;
+        this.memory = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, ParseTables> eldest) {
+                return size() > ParserCache.this.capacity;
+            }
+        };
+    }
+
+    /**
+     * @return the tables of the grammar, built only if neither tier holds
+     * them. If the grammar has conflicts in this mode, the tables keep them
+     * and their getConflictCount is not 0; they are cached like any other.
+     * @throws IOException if a built table cannot be saved to the directory
+     */
+    public ParseTables getTables(Grammar grammar, Mode mode) throws IOException {
+        String key = fingerprint(grammar, mode);
+        synchronized (this) {
+            ParseTables tables = memory.get(key);
+            if (tables != null) {
+                memoryHits++;
+                return tables;
+            }
+        }
+
+        ParseTables tables = null;
+        Path file = directory == null ? null : directory.resolve(key + ".lrt");
+        if (file != null && Files.exists(file)) {
+            tables = load(file, grammar);
+        }
+        if (tables != null) {
+            synchronized (this) {
+                diskHits++;
+            }
+        } else {
+            LR1Parser parser = new LR1Parser(grammar);
+            if (mode == Mode.CLR1) {
+                parser.parseCLR1();
+            } else {
+                parser.parseLALR1();
+            }
+            tables = parser.getTables();
+            synchronized (this) {
+                misses++;
+            }
+            if (file != null) {
+                Files.createDirectories(directory);
+                // written aside and moved, so no reader sees a partial file
+                Path temp = Files.createTempFile(directory, key, ".tmp");
+                try {
+                    TableFile.write(temp, grammar, tables);
+                    Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                } finally {
+                    Files.deleteIfExists(temp);
+                }
+            }
+        }
+        synchronized (this) {
+            memory.put(key, tables);
+        }
+        return tables;
+    }
+
+    /**
+     * @return the number of conflicting cells in the tables of the grammar,
+     * 0 if a deterministic driver recognizes exactly its language
+     */
+    public int getConflictCount(Grammar grammar, Mode mode) throws IOException {
+        return getTables(grammar, mode).getConflictCount();
+    }
+
+    /**
+     * @return a parser over the cached tables, or null if the grammar has a
+     * conflict in this mode, since CompiledParser only follows the first
+     * action of a cell; getRecognizer handles both cases
+     */
+    public CompiledParser getParser(Grammar grammar, Mode mode) throws IOException {
+        ParseTables tables = getTables(grammar, mode);
+        return tables.getConflictCount() != 0 ? null : new CompiledParser(grammar, tables);
+    }
+
+    /**
+     * @return a new ParseDriver over the cached tables, or a GLRDriver if
+     * the grammar has a conflict in this mode
+     */
+    public Recognizer getRecognizer(Grammar grammar, Mode mode) throws IOException {
+        ParseTables tables = getTables(grammar, mode);
+        return tables.getConflictCount() != 0 ? new GLRDriver(tables) : new ParseDriver(tables);
+    }
+
+    /**
+     * @return the tables in the file, or null if it cannot be read or was
+     * written for other symbols, in which case they are built again
+     */
+    private static ParseTables load(Path file, Grammar grammar) {
+        try {
+            TableFile tableFile = TableFile.read(file);
+            if (tableFile.getSymbols().size() != grammar.getSymbolCount()) {
+                return null;
+            }
+            for (int id = 0; id < grammar.getSymbolCount(); id++) {
+                if (!tableFile.getSymbols().get(id).equals(grammar.getSymbol(id))) {
+                    return null;
+                }
+            }
+            return tableFile.getTables();
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return the hex SHA-256 of the mode, the table file version, the symbols
+     * in id order and the rules in order, which together fix the tables
+     */
+    public static String fingerprint(Grammar grammar, Mode mode) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        update(digest, mode.name());
+        updateInt(digest, TableFile.VERSION);
+        updateInt(digest, grammar.getSymbolCount());
+        for (int id = 0; id < grammar.getSymbolCount(); id++) {
+            update(digest, grammar.getSymbol(id));
+        }
+        updateInt(digest, grammar.getRules().size());
+        for (Rule rule : grammar.getRules()) {
+            updateInt(digest, rule.getLeftId());
+            updateInt(digest, rule.getRightIds().length);
+            for (int id : rule.getRightIds()) {
+                updateInt(digest, id);
+            }
+        }
+
+        StringBuilder sb = new StringBuilder();
+        for (byte b : digest.digest()) {
+            sb.append(Character.forDigit((b >> 4) & 15, 16)).append(Character.forDigit(b & 15, 16));
+        }
+        return sb.toString();
+    }
+
+    // length-prefixed, so no two symbol lists give the same bytes
+    private static void update(MessageDigest digest, String s) {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        updateInt(digest, bytes.length);
+        digest.update(bytes);
+    }
+
+    private static void updateInt(MessageDigest digest, int value) {
+        digest.update(ByteBuffer.allocate(4).putInt(value).array());
+    }
+
+    public synchronized long getMemoryHits() {
+        return memoryHits;
+    }
+
+    public synchronized long getDiskHits() {
+        return diskHits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+}
@@ -98,8 +98,7 @@ lr1Parser = new LR1Parser(grammar);
 boolean canBeParse = lr1Parser.parseCLR1();
 
 if (!canBeParse) {
-    System.out.println("The grammar cannot be parsed (conflicts detected in CLR(1) tables).");
-    return;
+    System.out.println("Conflicts detected in CLR(1) tables; inputs will be parsed with GLR. Opening GUI output...");
 } else {
     System.out.println("Canonical LR(1) tables built successfully. Opening GUI output...");
 }
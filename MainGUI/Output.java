@@ -1,14 +1,12 @@
 package MainGUI;
 
 import core.*;
-import core.Action;
 import java.awt.*;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.Stack;
 import javax.swing.*;
 
 
@@ -21,6 +19,8 @@ public class Output extends JFrame {
 
     private LALRConverter.Result lalr;
 
+    private Lexer lexer;
+
     public Output() {
         setTitle("LALR Parser");
         setSize(900, 720);
@@ -59,11 +59,8 @@ public class Output extends JFrame {
     private void init() {
         Grammar g = Main.lr1Parser.getGrammar();
 
-        lalr = LALRConverter.convert(
-                Main.lr1Parser.actionTable,
-                Main.lr1Parser.goToTable,
-                Main.lr1Parser.canonicalCollectionStr()
-        );
+        lalr = LALRConverter.convert(Main.lr1Parser);
+        lexer = Lexer.build(g);
 
         StringBuilder sb = new StringBuilder();
 
@@ -77,18 +74,24 @@ public class Output extends JFrame {
         sb.append(Main.lr1Parser.actionTableStr()).append("\n");
 
         sb.append("=== LALR(1) merging info ===\n");
-        sb.append(lalr.mergeInfo).append("\n");
+        sb.append(lalr.mergeInfo()).append("\n");
 
         sb.append("=== LALR(1) ACTION TABLE ===\n");
-        sb.append(lalr.lalrActionStr).append("\n");
+        sb.append(lalr.actionTableStr()).append("\n");
 
         sb.append("=== LALR(1) GOTO TABLE ===\n");
-        sb.append(lalr.lalrGoToStr).append("\n");
+        sb.append(lalr.goToTableStr()).append("\n");
 
         sb.append("=== LALR(1) States (After Merge) ===\n");
-        sb.append(lalr.lalrStatesStr).append("\n");
+        sb.append(lalr.statesStr()).append("\n");
 
-        sb.append(lalr.message).append("\n");
+        if (Main.lr1Parser.getTables().getConflictCount() > 0) {
+            sb.append("Grammar is NOT LR(1): its tables have ")
+                    .append(Main.lr1Parser.getTables().getConflictCount())
+                    .append(" conflicting cells, which GLR parsing follows\n");
+        } else {
+            sb.append(lalr.message).append("\n");
+        }
 
         outputArea.setText(sb.toString());
         outputArea.setCaretPosition(0);
@@ -112,84 +115,44 @@ public class Output extends JFrame {
     }
 
     private void parseInput() {
+        Grammar g = Main.lr1Parser.getGrammar();
         String txt = inputField.getText().trim();
 
         ArrayList<String> words = new ArrayList<>();
-        if (!txt.isEmpty()) {
-            String[] parts = txt.split("\\s+");
-            for (String p : parts) {
-                if (!p.isEmpty()) words.add(p);
-            }
-        }
+        int[] tokens = lexer.tokenize(txt, words);
 
         StringBuilder sb = new StringBuilder();
         sb.append(outputArea.getText()).append("\n\n");
-        sb.append(String.format("%-40s%-40s%-20s\n", "Stack", "Input", "Action"));
-        sb.append("-".repeat(100)).append("\n");
 
+        ParseTables clr = Main.lr1Parser.getTables();
         if (lalr.hasConflict) {
-            sb.append("\nCannot parse - Grammar not LALR(1)\n");
-            resultLabel.setText("Grammar is NOT LALR(1)");
+            // the canonical tables keep every action of a conflict
+            boolean accepted = new GLRDriver(clr).parse(tokens);
+            sb.append("Grammar not LALR(1) - parsed with GLR\n");
+            sb.append(accepted ? "\naccepted" : "\nnot accepted");
+            resultLabel.setText(accepted ? "ACCEPTED (GLR)" : "NOT ACCEPTED (GLR)");
             outputArea.setText(sb.toString());
             outputArea.setCaretPosition(0);
             return;
         }
 
-        ArrayList<String> in = new ArrayList<>(words);
-        in.add("$");
-
-        int index = 0;
-        Stack<String> stack = new Stack<>();
-        stack.add("0");
-
-        boolean accepted = false;
-
-        while (index < in.size()) {
-            int state = Integer.parseInt(stack.peek());
-            String nextInput = in.get(index);
-
-            Action action = lalr.actionTable[state].get(nextInput);
-
-            String stackStr = String.join(" ", stack);
-            String inputStr = String.join(" ", in.subList(index, in.size()));
-            String actStr;
-
-            if (action == null) {
-                actStr = "error";
-                sb.append(String.format("%-40s%-40s%-20s\n", stackStr, inputStr, actStr));
-                break;
-            } else if (action.getType() == ActionType.S) {
-                actStr = "S" + action.getOperand();
-                sb.append(String.format("%-40s%-40s%-20s\n", stackStr, inputStr, actStr));
-                stack.push(nextInput);
-                stack.push(Integer.toString(action.getOperand()));
-                index++;
-            } else if (action.getType() == ActionType.R) {
-                int ruleIndex = action.getOperand();
-                Rule rule = Main.lr1Parser.getGrammar().getRules().get(ruleIndex);
-                actStr = "R" + ruleIndex;
-                sb.append(String.format("%-40s%-40s%-20s\n", stackStr, inputStr, actStr));
-
-                int rightSideLength = rule.getRightSide().length;
-                for (int i = 0; i < 2 * rightSideLength; i++) {
-                    if (!stack.isEmpty()) stack.pop();
-                }
-
-                int nextState = Integer.parseInt(stack.peek());
-                stack.push(rule.getLeftSide());
-
-                Integer variableState = lalr.goToTable[nextState].get(rule.getLeftSide());
-                if (variableState == null) {
-                    sb.append("\nnot accepted");
-                    break;
-                }
-                stack.push(variableState.toString());
-            } else if (action.getType() == ActionType.ACC) {
-                actStr = "ACC";
-                sb.append(String.format("%-40s%-40s%-20s\n", stackStr, "$", actStr));
-                accepted = true;
-                break;
+        ParseDriver driver = new ParseDriver(lalr.tables);
+        TraceBuffer trace = new TraceBuffer(TraceBuffer.DEFAULT_CAPACITY);
+        driver.setTrace(trace);
+        driver.setRecovery(true);
+        driver.reset();
+        driver.push(tokens, 0, tokens.length);
+        boolean accepted = driver.end();
+        sb.append(trace.render(g, words));
+
+        if (driver.getErrorCount() > 0) {
+            sb.append("\nsyntax errors at:");
+            for (int i = 0; i < driver.getErrorCount(); i++) {
+                int position = (int) driver.getErrorPosition(i);
+                sb.append(" ").append(position).append(" (")
+                        .append(position < words.size() ? words.get(position) : "$").append(")");
             }
+            sb.append("\n");
         }
 
         if (accepted) {
@@ -0,0 +1,774 @@
+package core;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Compiles parse tables to bytecode and loads it as a hidden class
+ * implementing Recognizer. Every state is direct coded: a state switches on
+ * the lookahead and jumps to a block shared by all shifts to the same state
+ * or all reductions by the same rule; a reduction finds its goto with a
+ * switch on the uncovered state.
+ *
+ * HotSpot does not compile methods over 8000 bytes, so the states are split
+ * into chunks of consecutive states, one method each, that keep their
+ * stack, top and input index in locals while the parse stays inside the
+ * chunk. parse only picks the chunk of the top state. The gotos of every
+ * variable are a static method, split by state ranges when large.
+ *
+ * The class file is written by hand with major version 49, which predates
+ * stack map frames, so no frames have to be computed. A method whose short
+ * branches do not reach is assembled again with goto_w; only a single state
+ * whose code exceeds the 64 KB method limit is rejected.
+ */
+public final class BytecodeCompiler {
+
+    private static final String CLASS_NAME = "core/CompiledRecognizer";
+
+    // the largest method HotSpot compiles, see -XX:HugeMethodLimit
+    static final int METHOD_LIMIT = 8000;
+
+    // estimated code size of a chunk before it is assembled
+    private static final int CHUNK_BUDGET = 6000;
+
+    // local variables of a chunk method
+    private static final int TOKENS = 1;
+    private static final int TO = 2;
+    private static final int STACK = 3;
+    private static final int TOP = 4;
+    private static final int INDEX = 5;
+    private static final int TOKEN = 6;
+    private static final int TARGET = 7;
+
+    // results of a chunk method
+    private static final int CONTINUE = 0;
+    private static final int ACCEPT = 1;
+    private static final int REJECT = 2;
+
+    private final ParseTables tables;
+
+    private final MethodHandles.Lookup lookup;
+
+    private final ArrayList<Method> methods = new ArrayList<>();
+
+    // first state of every chunk
+    private int[] chunkStart;
+
+    private int largestMethod;
+
+    /**
+     * @throws IllegalArgumentException if a state needs more than 64 KB of
+     * code
+     */
+    public BytecodeCompiler(ParseTables tables) {
+        this.tables = tables;
+        try {
+            lookup = MethodHandles.lookup().defineHiddenClass(generate(), true);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @return a new recognizer; use one per thread
+     */
+    public Recognizer newRecognizer() {
+        try {
+            return (Recognizer) lookup.findConstructor(lookup.lookupClass(), MethodType.methodType(void.class)).invoke();
+        } catch (Throwable e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @return the number of methods the states were split into
+     */
+    int getChunkCount() {
+        return chunkStart.length;
+    }
+
+    /**
+     * @return the code size in bytes of the largest generated method
+     */
+    int getLargestMethod() {
+        return largestMethod;
+    }
+
+    private static final class Method {
+
+        final String name;
+
+        final String descriptor;
+
+        final int access;
+
+        final byte[] code;
+
+        final int maxStack;
+
+        final int maxLocals;
+
+        Method(String name, String descriptor, int access, byte[] code, int maxStack, int maxLocals) {
+            this.name = name;
+            this.descriptor = descriptor;
+            this.access = access;
+            this.code = code;
+            this.maxStack = maxStack;
+            this.maxLocals = maxLocals;
+        }
+    }
+
+    private interface Emitter {
+        void emit(Assembler a);
+    }
+
+    /**
+     * Assembles the method with short branches, or with goto_w if one of
+     * them does not reach.
+     */
+    private Method assemble(ConstantPool pool, String name, String descriptor, int access, int maxStack,
+                            int maxLocals, Emitter emitter) {
+        Assembler a = new Assembler(pool, false);
+        emitter.emit(a);
+        byte[] code = a.toByteArray();
+        if (code == null) {
+            a = new Assembler(pool, true);
+            emitter.emit(a);
+            code = a.toByteArray();
+        }
+        largestMethod = Math.max(largestMethod, code.length);
+        return new Method(name, descriptor, access, code, maxStack, maxLocals);
+    }
+
+    private byte[] generate() {
+        ConstantPool pool = new ConstantPool();
+        int thisClass = pool.classRef(CLASS_NAME);
+        int superClass = pool.classRef("java/lang/Object");
+        int recognizer = pool.classRef("core/Recognizer");
+        int stackField = pool.memberRef(9, CLASS_NAME, "stack", "[I");
+        int topField = pool.memberRef(9, CLASS_NAME, "top", "I");
+        int indexField = pool.memberRef(9, CLASS_NAME, "index", "I");
+        int objectInit = pool.memberRef(10, "java/lang/Object", "<init>", "()V");
+        int copyOf = pool.memberRef(10, "java/util/Arrays", "copyOf", "([II)[I");
+        int code = pool.utf8("Code");
+
+        methods.add(assemble(pool, "<init>", "()V", 0x0001, 3, 1, a -> {
+            a.op(0x2a);                    // aload_0
+            a.op(0xb7).u2(objectInit);     // invokespecial Object.<init>
+            a.op(0x2a);
+            a.op(0x10).u1(64);             // bipush 64
+            a.op(0xbc).u1(10);             // newarray int
+            a.op(0xb5).u2(stackField);     // putfield stack
+            a.op(0xb1);                    // return
+        }));
+
+        int[] gotoMethods = new int[tables.getVariableCount()];
+        for (int v = 0; v < gotoMethods.length; v++) {
+            TreeMap<Integer, Integer> cases = new TreeMap<>();
+            for (int s = 0; s < tables.getStateCount(); s++) {
+                if (tables.goTo(s, v) != -1) {
+                    cases.put(s, tables.goTo(s, v));
+                }
+            }
+            if (!cases.isEmpty()) {
+                gotoMethods[v] = switchMethod(pool, "goto" + v, new ArrayList<>(cases.entrySet()));
+            }
+        }
+
+        TreeMap<Integer, Integer> chunkMethods = new TreeMap<>();
+        int[] starts = chunks();
+        for (int k = 0; k < starts.length; k++) {
+            chunk(pool, starts[k], k + 1 < starts.length ? starts[k + 1] : tables.getStateCount(), gotoMethods,
+                    chunkMethods, stackField, topField, indexField, copyOf);
+        }
+        chunkStart = new int[chunkMethods.size()];
+        int[] chunkRefs = new int[chunkStart.length];
+        int k = 0;
+        for (Map.Entry<Integer, Integer> entry : chunkMethods.entrySet()) {
+            chunkStart[k] = entry.getKey();
+            chunkRefs[k++] = entry.getValue();
+        }
+        methods.add(assemble(pool, "parse", "([III)Z", 0x0001, 4, 5,
+                a -> dispatch(a, chunkRefs, stackField, topField, indexField)));
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(0xCAFEBABE);
+            out.writeShort(0);
+            out.writeShort(49);
+            int nameStack = pool.utf8("stack");
+            int descStack = pool.utf8("[I");
+            int nameTop = pool.utf8("top");
+            int nameIndex = pool.utf8("index");
+            int descInt = pool.utf8("I");
+            int[][] names = new int[methods.size()][];
+            for (int m = 0; m < names.length; m++) {
+                names[m] = new int[]{pool.utf8(methods.get(m).name), pool.utf8(methods.get(m).descriptor)};
+            }
+            pool.write(out);
+            out.writeShort(0x0001 | 0x0010 | 0x0020);    // public final super
+            out.writeShort(thisClass);
+            out.writeShort(superClass);
+            out.writeShort(1);
+            out.writeShort(recognizer);
+            out.writeShort(3);
+            writeField(out, nameStack, descStack);         // private int[] stack
+            writeField(out, nameTop, descInt);             // private int top
+            writeField(out, nameIndex, descInt);           // private int index
+            out.writeShort(methods.size());
+            for (int m = 0; m < names.length; m++) {
+                writeMethod(out, names[m][0], names[m][1], code, methods.get(m));
+            }
+            out.writeShort(0);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void writeField(DataOutputStream out, int name, int descriptor) throws IOException {
+        out.writeShort(0x0002);
+        out.writeShort(name);
+        out.writeShort(descriptor);
+        out.writeShort(0);
+    }
+
+    private static void writeMethod(DataOutputStream out, int name, int descriptor, int codeName, Method method)
+            throws IOException {
+        byte[] bytes = method.code;
+        out.writeShort(method.access);
+        out.writeShort(name);
+        out.writeShort(descriptor);
+        out.writeShort(1);
+        out.writeShort(codeName);
+        out.writeInt(12 + bytes.length);
+        out.writeShort(method.maxStack);
+        out.writeShort(method.maxLocals);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+        out.writeShort(0);
+        out.writeShort(0);
+    }
+
+    /**
+     * Splits the states into ranges whose estimated code fits CHUNK_BUDGET.
+     * A range whose assembled code is still too large is halved when its
+     * methods are built, see chunk.
+     *
+     * @return the first state of every range
+     */
+    private int[] chunks() {
+        ArrayList<Integer> starts = new ArrayList<>();
+        starts.add(0);
+        HashSet<Integer> blocks = new HashSet<>();
+        int size = 0;
+        for (int s = 0; s < tables.getStateCount(); s++) {
+            HashSet<Integer> used = new HashSet<>();
+            int cost = 8;
+            int defaultReduce = tables.getDefaultReduction(s);
+            if (defaultReduce != ParseTables.ERROR) {
+                used.add(defaultReduce);
+            } else {
+                for (int t = 0; t < tables.getTerminalCount(); t++) {
+                    int action = tables.action(s, t);
+                    if (action != ParseTables.ERROR) {
+                        used.add(action);
+                        cost += 8;
+                    }
+                }
+                cost += 16;
+            }
+            if (size > 0 && size + cost > CHUNK_BUDGET) {
+                starts.add(s);
+                blocks.clear();
+                size = 0;
+            }
+            for (int action : used) {
+                if (blocks.add(action)) {
+                    cost += ParseTables.kind(action) == ParseTables.REDUCE ? 24 : 12;
+                }
+            }
+            size += cost;
+        }
+        int[] result = new int[starts.size()];
+        for (int k = 0; k < result.length; k++) {
+            result[k] = starts.get(k);
+        }
+        return result;
+    }
+
+    /**
+     * parse: resets the stack, then calls the chunk of the top state, found
+     * by a binary search over chunkStart, until one accepts or rejects.
+     */
+    private void dispatch(Assembler a, int[] chunkRefs, int stackField, int topField, int indexField) {
+        final int state = 4;
+        Label loop = a.label();
+        Label result = a.label();
+        // this.top = 0; this.stack[0] = 0; this.index = from
+        a.op(0x2a).op(0x03).op(0xb5).u2(topField);
+        a.op(0x2a).op(0xb4).u2(stackField).op(0x03).op(0x03).op(0x4f);
+        a.op(0x2a).op(0x1c).op(0xb5).u2(indexField);
+
+        // state = this.stack[this.top]
+        a.bind(loop);
+        a.op(0x2a).op(0xb4).u2(stackField).op(0x2a).op(0xb4).u2(topField).op(0x2e).istore(state);
+        search(a, state, 0, chunkRefs.length - 1, chunkRefs, result);
+
+        // go on while the chunk returns CONTINUE, else return result == ACCEPT
+        Label done = a.label();
+        Label reject = a.label();
+        a.bind(result);
+        a.op(0x59).branch(0x9a, done);                 // dup, ifne
+        a.op(0x57).branch(0xa7, loop);                 // pop
+        a.bind(done);
+        a.constant(ACCEPT).branch(0xa0, reject);       // if_icmpne
+        a.op(0x04).op(0xac);
+        a.bind(reject);
+        a.op(0x03).op(0xac);
+    }
+
+    private void search(Assembler a, int state, int low, int high, int[] chunkRefs, Label result) {
+        if (low == high) {
+            // this.chunk(tokens, to)
+            a.op(0x2a).op(0x2b).op(0x1d).op(0xb7).u2(chunkRefs[low]).branch(0xa7, result);
+            return;
+        }
+        int middle = (low + high + 1) >>> 1;
+        Label below = a.label();
+        a.iload(state).constant(chunkStart[middle]).branch(0xa1, below);    // if_icmplt
+        search(a, state, middle, high, chunkRefs, result);
+        a.bind(below);
+        search(a, state, low, middle - 1, chunkRefs, result);
+    }
+
+    /**
+     * Adds the method of the states from..to, or of its halves if its code
+     * is over METHOD_LIMIT, to chunkMethods by first state.
+     */
+    private void chunk(ConstantPool pool, int from, int to, int[] gotoMethods, TreeMap<Integer, Integer> chunkMethods,
+                       int stackField, int topField, int indexField, int copyOf) {
+        Method method = assemble(pool, "chunk" + from, "([II)I", 0x0002, 5, 8,
+                a -> chunkCode(a, from, to, gotoMethods, stackField, topField, indexField, copyOf));
+        if (method.code.length > METHOD_LIMIT && to - from > 1) {
+            int middle = (from + to) >>> 1;
+            chunk(pool, from, middle, gotoMethods, chunkMethods, stackField, topField, indexField, copyOf);
+            chunk(pool, middle, to, gotoMethods, chunkMethods, stackField, topField, indexField, copyOf);
+            return;
+        }
+        methods.add(method);
+        chunkMethods.put(from, pool.memberRef(10, CLASS_NAME, method.name, method.descriptor));
+    }
+
+    /**
+     * A chunk: loads the parser state into locals and runs the states
+     * from..to until the top state is another chunk's, then stores it back
+     * and returns CONTINUE; returns ACCEPT or REJECT at the end.
+     */
+    private void chunkCode(Assembler a, int from, int to, int[] gotoMethods, int stackField, int topField,
+                           int indexField, int copyOf) {
+        int endMarker = tables.getTerminalCount() - 1;
+        Label next = a.label();
+        Label loop = a.label();
+        Label exit = a.label();
+        Label error = a.label();
+        Label accept = a.label();
+        Label shiftTarget = a.label();
+        Label pushTarget = a.label();
+        HashMap<Integer, Label> blocks = new HashMap<>();
+
+        // stack = this.stack; top = this.top; index = this.index
+        a.op(0x2a).op(0xb4).u2(stackField).astore(STACK);
+        a.op(0x2a).op(0xb4).u2(topField).istore(TOP);
+        a.op(0x2a).op(0xb4).u2(indexField).istore(INDEX);
+
+        // token = index == to ? $ : tokens[index], rejecting ids that are not terminals
+        a.bind(next);
+        Label inside = a.label();
+        a.iload(INDEX).iload(TO).branch(0xa1, inside);            // if_icmplt
+        a.constant(endMarker).istore(TOKEN).branch(0xa7, loop);
+        a.bind(inside);
+        a.aload(TOKENS).iload(INDEX).op(0x2e).istore(TOKEN);
+        a.iload(TOKEN).branch(0x9b, error);                        // iflt
+        a.iload(TOKEN).constant(endMarker).branch(0xa2, error);    // if_icmpge
+
+        // switch (stack[top]), leaving for states of other chunks
+        a.bind(loop);
+        Label[] stateLabels = new Label[to - from];
+        for (int s = from; s < to; s++) {
+            stateLabels[s - from] = a.label();
+        }
+        a.aload(STACK).iload(TOP).op(0x2e);
+        a.tableSwitch(from, stateLabels, exit);
+
+        for (int s = from; s < to; s++) {
+            a.bind(stateLabels[s - from]);
+            int defaultReduce = tables.getDefaultReduction(s);
+            if (defaultReduce != ParseTables.ERROR) {
+                a.branch(0xa7, block(a, blocks, defaultReduce, accept));
+                continue;
+            }
+            TreeMap<Integer, Label> cases = new TreeMap<>();
+            for (int t = 0; t <= endMarker; t++) {
+                int action = tables.action(s, t);
+                if (action != ParseTables.ERROR) {
+                    cases.put(t, block(a, blocks, action, accept));
+                }
+            }
+            a.iload(TOKEN);
+            a.lookupSwitch(cases, error);
+        }
+
+        // shift q: target = q, then index++, push target, read the next token
+        // reduce r: top -= |r|, target = goto of the uncovered state, push it
+        for (Map.Entry<Integer, Label> entry : new TreeMap<>(blocks).entrySet()) {
+            int action = entry.getKey();
+            int operand = ParseTables.operand(action);
+            a.bind(entry.getValue());
+            if (ParseTables.kind(action) == ParseTables.SHIFT) {
+                a.constant(operand).istore(TARGET).branch(0xa7, shiftTarget);
+                continue;
+            }
+            int length = tables.getRuleLength(operand);
+            if (length != 0) {
+                a.iload(TOP).constant(length).op(0x64).istore(TOP);
+            }
+            a.aload(STACK).iload(TOP).op(0x2e);
+            a.op(0xb8).u2(gotoMethods[tables.getRuleLeft(operand)]).istore(TARGET);    // invokestatic
+            a.branch(0xa7, pushTarget);
+        }
+
+        a.bind(shiftTarget);
+        a.iinc(INDEX, 1);
+        pushTarget(a, stackField, copyOf);
+        a.branch(0xa7, next);
+
+        a.bind(pushTarget);
+        pushTarget(a, stackField, copyOf);
+        a.branch(0xa7, loop);
+
+        // this.top = top; this.index = index; the stack field is kept current
+        a.bind(exit);
+        a.op(0x2a).iload(TOP).op(0xb5).u2(topField);
+        a.op(0x2a).iload(INDEX).op(0xb5).u2(indexField);
+        a.constant(CONTINUE).op(0xac);
+        a.bind(accept);
+        a.constant(ACCEPT).op(0xac);
+        a.bind(error);
+        a.constant(REJECT).op(0xac);
+    }
+
+    // the block of a shift or reduce action, accept for accept
+    private static Label block(Assembler a, HashMap<Integer, Label> blocks, int action, Label accept) {
+        if (ParseTables.kind(action) == ParseTables.ACCEPT) {
+            return accept;
+        }
+        return blocks.computeIfAbsent(action, k -> a.label());
+    }
+
+    /**
+     * top++, growing the stack (and this.stack) when it is full, then
+     * stack[top] = target.
+     */
+    private static void pushTarget(Assembler a, int stackField, int copyOf) {
+        Label room = a.label();
+        a.iinc(TOP, 1);
+        a.iload(TOP).aload(STACK).op(0xbe).branch(0xa1, room);         // arraylength, if_icmplt
+        a.aload(STACK).aload(STACK).op(0xbe).op(0x05).op(0x68);       // length * 2
+        a.op(0xb8).u2(copyOf).astore(STACK);                         // invokestatic copyOf
+        a.op(0x2a).aload(STACK).op(0xb5).u2(stackField);             // this.stack = stack
+        a.bind(room);
+        a.aload(STACK).iload(TOP).iload(TARGET).op(0x4f);            // iastore
+    }
+
+    /**
+     * Adds a static method (I)I returning the value of its argument in
+     * cases, split in halves by key while a half is over CHUNK_BUDGET.
+     *
+     * @return its method ref
+     */
+    private int switchMethod(ConstantPool pool, String name, List<Map.Entry<Integer, Integer>> cases) {
+        if (cases.size() * 12 + 16 > CHUNK_BUDGET) {
+            int middle = cases.size() / 2;
+            int low = switchMethod(pool, name + "a", cases.subList(0, middle));
+            int high = switchMethod(pool, name + "b", cases.subList(middle, cases.size()));
+            int split = cases.get(middle).getKey();
+            methods.add(assemble(pool, name, "(I)I", 0x000a, 1, 1, a -> {
+                Label below = a.label();
+                a.op(0x1a).constant(split).branch(0xa1, below);    // iload_0, if_icmplt
+                a.op(0x1a).op(0xb8).u2(high).op(0xac);
+                a.bind(below);
+                a.op(0x1a).op(0xb8).u2(low).op(0xac);
+            }));
+        } else {
+            methods.add(assemble(pool, name, "(I)I", 0x000a, 1, 1, a -> {
+                Label missing = a.label();
+                HashMap<Integer, Label> values = new HashMap<>();
+                TreeMap<Integer, Label> labels = new TreeMap<>();
+                for (Map.Entry<Integer, Integer> entry : cases) {
+                    labels.put(entry.getKey(), values.computeIfAbsent(entry.getValue(), v -> a.label()));
+                }
+                a.op(0x1a).lookupSwitch(labels, missing);
+                for (Map.Entry<Integer, Label> entry : new TreeMap<>(values).entrySet()) {
+                    a.bind(entry.getValue());
+                    a.constant(entry.getKey()).op(0xac);
+                }
+                a.bind(missing);
+                a.op(0x02).op(0xac);    // iconst_m1
+            }));
+        }
+        return pool.memberRef(10, CLASS_NAME, name, "(I)I");
+    }
+
+    private static final class Label {
+
+        private int position = -1;
+
+        // (instruction address, offset address, offset size) of each use
+        private final ArrayList<int[]> uses = new ArrayList<>();
+    }
+
+    private static final class Assembler {
+
+        private final ConstantPool pool;
+
+        // every branch is a goto_w, conditions jump over one
+        private final boolean wide;
+
+        private byte[] code = new byte[256];
+
+        private int size;
+
+        private final ArrayList<Label> labels = new ArrayList<>();
+
+        Assembler(ConstantPool pool, boolean wide) {
+            this.pool = pool;
+            this.wide = wide;
+        }
+
+        Label label() {
+            Label label = new Label();
+            labels.add(label);
+            return label;
+        }
+
+        void bind(Label label) {
+            label.position = size;
+        }
+
+        Assembler op(int opcode) {
+            return u1(opcode);
+        }
+
+        Assembler u1(int value) {
+            if (size == code.length) {
+                code = Arrays.copyOf(code, size * 2);
+            }
+            code[size++] = (byte) value;
+            return this;
+        }
+
+        Assembler u2(int value) {
+            return u1(value >>> 8).u1(value);
+        }
+
+        Assembler u4(int value) {
+            return u2(value >>> 16).u2(value);
+        }
+
+        Assembler iload(int local) {
+            return op(0x15).u1(local);
+        }
+
+        Assembler istore(int local) {
+            return op(0x36).u1(local);
+        }
+
+        Assembler aload(int local) {
+            return op(0x19).u1(local);
+        }
+
+        Assembler astore(int local) {
+            return op(0x3a).u1(local);
+        }
+
+        Assembler iinc(int local, int delta) {
+            return op(0x84).u1(local).u1(delta);
+        }
+
+        Assembler constant(int value) {
+            if (value >= -1 && value <= 5) {
+                return op(0x03 + value);
+            } else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+                return op(0x10).u1(value);
+            } else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+                return op(0x11).u2(value);
+            }
+            int index = pool.integer(value);
+            return index < 256 ? op(0x12).u1(index) : op(0x13).u2(index);
+        }
+
+        Assembler branch(int opcode, Label target) {
+            if (wide) {
+                if (opcode != 0xa7) {
+                    // the opposite condition skips its 3 bytes and the goto_w
+                    op(0x99 + ((opcode - 0x99) ^ 1)).u2(8);
+                }
+                int at = size;
+                op(0xc8);
+                target.uses.add(new int[]{at, size, 4});
+                return u4(0);
+            }
+            int at = size;
+            op(opcode);
+            target.uses.add(new int[]{at, size, 2});
+            return u2(0);
+        }
+
+        void tableSwitch(int low, Label[] targets, Label otherwise) {
+            int at = size;
+            op(0xaa);
+            while (size % 4 != 0) {
+                u1(0);
+            }
+            offset(at, otherwise);
+            u4(low);
+            u4(low + targets.length - 1);
+            for (Label target : targets) {
+                offset(at, target);
+            }
+        }
+
+        void lookupSwitch(TreeMap<Integer, Label> cases, Label otherwise) {
+            int at = size;
+            op(0xab);
+            while (size % 4 != 0) {
+                u1(0);
+            }
+            offset(at, otherwise);
+            u4(cases.size());
+            for (Map.Entry<Integer, Label> entry : cases.entrySet()) {
+                u4(entry.getKey());
+                offset(at, entry.getValue());
+            }
+        }
+
+        private void offset(int at, Label target) {
+            target.uses.add(new int[]{at, size, 4});
+            u4(0);
+        }
+
+        /**
+         * @return the code, or null if a short branch does not reach its
+         * label
+         * @throws IllegalArgumentException if the code is over 64 KB
+         */
+        byte[] toByteArray() {
+            if (size > 65535) {
+                throw new IllegalArgumentException("tables too large for bytecode: a state needs over 64 KB");
+            }
+            for (Label label : labels) {
+                for (int[] use : label.uses) {
+                    int offset = label.position - use[0];
+                    if (use[2] == 2) {
+                        if (offset < Short.MIN_VALUE || offset > Short.MAX_VALUE) {
+                            return null;
+                        }
+                        code[use[1]] = (byte) (offset >>> 8);
+                        code[use[1] + 1] = (byte) offset;
+                    } else {
+                        for (int i = 0; i < 4; i++) {
+                            code[use[1] + i] = (byte) (offset >>> (24 - 8 * i));
+                        }
+                    }
+                }
+            }
+            return Arrays.copyOf(code, size);
+        }
+    }
+
+    private static final class ConstantPool {
+
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        private final DataOutputStream out = new DataOutputStream(bytes);
+
+        private final HashMap<String, Integer> entries = new HashMap<>();
+
+        private int count = 1;
+
+        int utf8(String value) {
+            return entry("U" + value, () -> {
+                out.writeByte(1);
+                out.writeUTF(value);
+            });
+        }
+
+        int integer(int value) {
+            return entry("I" + value, () -> {
+                out.writeByte(3);
+                out.writeInt(value);
+            });
+        }
+
+        int classRef(String name) {
+            int nameIndex = utf8(name);
+            return entry("C" + name, () -> {
+                out.writeByte(7);
+                out.writeShort(nameIndex);
+            });
+        }
+
+        /**
+         * @param tag 9 for a field, 10 for a method
+         */
+        int memberRef(int tag, String owner, String name, String descriptor) {
+            int ownerIndex = classRef(owner);
+            int nameIndex = utf8(name);
+            int descriptorIndex = utf8(descriptor);
+            int nameAndType = entry("N" + name + " " + descriptor, () -> {
+                out.writeByte(12);
+                out.writeShort(nameIndex);
+                out.writeShort(descriptorIndex);
+            });
+            return entry("M" + owner + "." + name + descriptor, () -> {
+                out.writeByte(tag);
+                out.writeShort(ownerIndex);
+                out.writeShort(nameAndType);
+            });
+        }
+
+        private int entry(String key, Writer writer) {
+            Integer index = entries.get(key);
+            if (index == null) {
+                try {
+                    writer.write();
+                } catch (IOException e) {
+                    throw new IllegalStateException(e);
+                }
+                index = count++;
+                entries.put(key, index);
+            }
+            return index;
+        }
+
+        void write(DataOutputStream target) throws IOException {
+            target.writeShort(count);
+            bytes.writeTo(target);
+        }
+
+        private interface Writer {
+            void write() throws IOException;
+        }
+    }
+}
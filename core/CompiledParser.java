@@ -0,0 +1,236 @@
+package core;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * An immutable parser built from the tables of an LRParser. All fields are
+ * final and never change after construction, so an instance can be shared
+ * freely between threads; every thread parses with its own ParseDriver, or
+ * its own instance of the bytecode compiled recognizer.
+ */
+public final class CompiledParser {
+
+    // inputs handled by one fork-join leaf
+    private static final int BATCH_SIZE = 256;
+
+    private final ParseTables tables;
+
+    private final Map<String, Integer> terminalIds;
+
+    private final ThreadLocal<ParseDriver> drivers;
+
+    // used for plain recognition
+    private final ThreadLocal<Recognizer> recognizers;
+
+    public CompiledParser(Grammar grammar, ParseTables tables) {
+        this(grammar, tables, false);
+    }
+
+    /**
+     * @param bytecode recognize with a BytecodeCompiler class instead of the
+     * table driver; syntax trees are still built by ParseDriver
+     * @throws IllegalArgumentException if bytecode is set and the tables are
+     * too large to compile
+     */
+    public CompiledParser(Grammar grammar, ParseTables tables, boolean bytecode) {
+        this(terminalNames(grammar), tables, bytecode);
+    }
+
+    /**
+     * Builds a parser without the grammar, e.g. over tables read by
+     * TableFile.
+     *
+     * @param terminals the name of every terminal id, without $
+     */
+    public CompiledParser(List<String> terminals, ParseTables tables, boolean bytecode) {
+        this.tables = tables;
+        HashMap<String, Integer> ids = new HashMap<>();
+        for (int t = 0; t < terminals.size(); t++) {
+            ids.put(terminals.get(t), t);
+        }
+        this.terminalIds = Collections.unmodifiableMap(ids);
+        this.drivers = ThreadLocal.withInitial(() -> new ParseDriver(tables));
+        if (bytecode) {
+            BytecodeCompiler compiler = new BytecodeCompiler(tables);
+            this.recognizers = ThreadLocal.withInitial(compiler::newRecognizer);
+        } else {
+            this.recognizers = ThreadLocal.withInitial(drivers::get);
+        }
+    }
+
+    private static List<String> terminalNames(Grammar grammar) {
+        String[] names = new String[grammar.getEndMarkerId()];
+        for (int t = 0; t < names.length; t++) {
+            names[t] = grammar.getSymbol(t);
+        }
+        return List.of(names);
+    }
+
+    /**
+     * @return the terminal id of the token, or -1 if it is not a terminal
+     */
+    public int getTokenId(String token) {
+        Integer id = terminalIds.get(token);
+        return id == null ? -1 : id;
+    }
+
+    public int[] toTokenIds(List<String> tokens) {
+        int[] ids = new int[tokens.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = getTokenId(tokens.get(i));
+        }
+        return ids;
+    }
+
+    public boolean parse(int[] tokens) {
+        return recognizers.get().parse(tokens);
+    }
+
+    public boolean parse(List<String> tokens) {
+        return parse(toTokenIds(tokens));
+    }
+
+    /**
+     * Parses a UTF-8 file, scanned by lexer straight from a memory map.
+     */
+    public boolean parse(Path file, Lexer lexer) throws IOException {
+        return lexer.parse(file, drivers.get());
+    }
+
+    /**
+     * Parses the input and builds its syntax tree into tree.
+     *
+     * @throws IllegalStateException if the tables skip unit reductions; the
+     * tree needs a parser compiled without skipping them
+     */
+    public boolean parse(int[] tokens, SyntaxTree tree) {
+        return drivers.get().parse(tokens, 0, tokens.length, tree);
+    }
+
+    /**
+     * A driver owned by the caller, for use on one thread.
+     */
+    public ParseDriver newDriver() {
+        return new ParseDriver(tables);
+    }
+
+    public BatchResult parseAll(List<int[]> inputs) {
+        return parseAll(inputs, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Parses every input on the pool. Inputs are split into ranges of
+     * BATCH_SIZE, and each range is parsed with one recognizer.
+     */
+    public BatchResult parseAll(List<int[]> inputs, ForkJoinPool pool) {
+        boolean[] accepted = new boolean[inputs.size()];
+        long start = System.nanoTime();
+        pool.invoke(new Batch(recognizers, inputs, accepted, 0, inputs.size()));
+        long elapsed = System.nanoTime() - start;
+        long tokens = 0;
+        for (int[] input : inputs) {
+            tokens += input.length;
+        }
+        return new BatchResult(accepted, tokens, elapsed);
+    }
+
+    public ParseTables getTables() {
+        return tables;
+    }
+
+    private static final class Batch extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final transient ThreadLocal<Recognizer> recognizers;
+
+        private final transient List<int[]> inputs;
+
+        private final boolean[] accepted;
+
+        private final int from;
+
+        private final int to;
+
+        Batch(ThreadLocal<Recognizer> recognizers, List<int[]> inputs, boolean[] accepted, int from, int to) {
+            this.recognizers = recognizers;
+            this.inputs = inputs;
+            this.accepted = accepted;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= BATCH_SIZE) {
+                Recognizer recognizer = recognizers.get();
+                for (int i = from; i < to; i++) {
+                    accepted[i] = recognizer.parse(inputs.get(i));
+                }
+            } else {
+                int middle = (from + to) >>> 1;
+                invokeAll(new Batch(recognizers, inputs, accepted, from, middle),
+                        new Batch(recognizers, inputs, accepted, middle, to));
+            }
+        }
+    }
+
+    public static final class BatchResult {
+
+        private final boolean[] accepted;
+
+        private final long tokenCount;
+
+        private final long elapsedNanos;
+
+        private final int acceptedCount;
+
+        BatchResult(boolean[] accepted, long tokenCount, long elapsedNanos) {
+            this.accepted = accepted;
+            this.tokenCount = tokenCount;
+            this.elapsedNanos = elapsedNanos;
+            int count = 0;
+            for (boolean a : accepted) {
+                if (a) count++;
+            }
+            this.acceptedCount = count;
+        }
+
+        public boolean isAccepted(int input) {
+            return accepted[input];
+        }
+
+        public int getInputCount() {
+            return accepted.length;
+        }
+
+        public int getAcceptedCount() {
+            return acceptedCount;
+        }
+
+        public long getTokenCount() {
+            return tokenCount;
+        }
+
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        public double getTokensPerSecond() {
+            return elapsedNanos == 0 ? 0 : tokenCount * 1e9 / elapsedNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d of %d inputs accepted, %d tokens in %.3f ms (%.0f tokens/s)",
+                    acceptedCount, accepted.length, tokenCount, elapsedNanos / 1e6, getTokensPerSecond());
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package core;
+
+/**
+ * The digraph traversal of DeRemer and Pennello: given a relation R over the
+ * nodes 0..n-1 and an initial set for every node, computes for every x the
+ * union of the initial sets of all nodes reachable from x. Every strongly
+ * connected component is visited once, so the cost is linear in the size of
+ * the relation.
+ */
+public class Digraph {
+
+    private final int[][] edges;
+    private final TerminalSet[] sets;
+    private final int[] depth;
+    private final int[] stack;
+    private int top;
+
+    // the nodes being visited, each with its depth and the index of the
+    // edge it follows next, in place of the recursion of the algorithm
+    private final int[] path;
+    private final int[] pathDepth;
+    private final int[] nextEdge;
+
+    private Digraph(int[][] edges, TerminalSet[] sets) {
+        this.edges = edges;
+        this.sets = sets;
+        this.depth = new int[edges.length];
+        this.stack = new int[edges.length];
+        this.path = new int[edges.length];
+        this.pathDepth = new int[edges.length];
+        this.nextEdge = new int[edges.length];
+    }
+
+    /**
+     * Adds to sets[x] the sets of everything reachable from x, in place.
+     */
+    public static void traverse(int[][] edges, TerminalSet[] sets) {
+        Digraph digraph = new Digraph(edges, sets);
+        for (int x = 0; x < edges.length; x++) {
+            if (digraph.depth[x] == 0) {
+                digraph.traverse(x);
+            }
+        }
+    }
+
+    private void traverse(int start) {
+        int length = enter(start, 0);
+        while (length > 0) {
+            int x = path[length - 1];
+            if (nextEdge[length - 1] < edges[x].length) {
+                int y = edges[x][nextEdge[length - 1]];
+                if (depth[y] == 0) {
+                    // y is merged into x once it is finished
+                    length = enter(y, length);
+                    continue;
+                }
+                depth[x] = Math.min(depth[x], depth[y]);
+                sets[x].addAll(sets[y]);
+                nextEdge[length - 1]++;
+                continue;
+            }
+            if (depth[x] == pathDepth[length - 1]) {
+                int node;
+                do {
+                    node = stack[--top];
+                    depth[node] = Integer.MAX_VALUE;
+                    if (node != x) {
+                        sets[node].addAll(sets[x]);
+                    }
+                } while (node != x);
+            }
+            length--;
+        }
+    }
+
+    /**
+     * Pushes x on the stack and the path.
+     *
+     * @return the new length of the path
+     */
+    private int enter(int x, int length) {
+        stack[top++] = x;
+        depth[x] = top;
+        path[length] = x;
+        pathDepth[length] = top;
+        nextEdge[length] = 0;
+        return length + 1;
+    }
+}
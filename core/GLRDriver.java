@@ -0,0 +1,504 @@
+package core;
+
+import java.util.Arrays;
+
+/**
+ * Generalized LR recognizer: accepts every sentence of the grammar even if
+ * its tables have conflicts. Where a cell has several actions the driver
+ * follows all of them at once on a graph-structured stack, in which the
+ * stack tops of one input position are merged by state and share their
+ * common prefixes, so an ambiguous input costs polynomial, not exponential,
+ * time. A new edge into a node of the current level is followed only by the
+ * reductions whose paths use that edge, and each search of the paths of a
+ * reduction visits a node at most once per step. A parse of n tokens is
+ * bounded by O(n^(p+1)) for a longest rule of p symbols; a fully ambiguous
+ * input to E -> E + E | E * E | id grows as about n^3, and grammars with
+ * local conflicts only, like the dangling else, stay linear.
+ *
+ * While no conflict is met, the driver runs on a plain int stack like
+ * ParseDriver. The first conflicting cell turns that stack into a chain of
+ * graph nodes, and as soon as the graph is again a single chain, e.g. after
+ * all but one alternative died, the parse goes back to the plain stack and
+ * the graph is dropped. A driver is not thread safe.
+ */
+public final class GLRDriver implements Recognizer {
+
+    private static final int SHIFTED = 0;
+    private static final int ACCEPTED = 1;
+    private static final int REJECTED = 2;
+
+    private final ParseTables tables;
+
+    private final int endMarker;
+
+    private int[] stack = new int[64];
+
+    private int top;
+
+    private boolean graph;
+
+    // node n has the state nodeState[n] and the edges e = nodeEdge[n],
+    // edgeNext[e], ... up to -1, each to the node edgeTarget[e] below it
+    private int[] nodeState = new int[64];
+    private int[] nodeEdge = new int[64];
+    private int nodeCount;
+
+    private int[] edgeTarget = new int[64];
+    private int[] edgeNext = new int[64];
+    private int edgeCount;
+
+    // stack tops at the current and the next input position, and the node
+    // of every state among them, -1 for none
+    private int[] level = new int[16];
+    private int levelSize;
+    private int[] levelNode;
+
+    // nodes from levelStart on belong to the current level
+    private int levelStart;
+
+    private int[] nextLevel = new int[16];
+    private int nextSize;
+    private int[] nextNode;
+
+    // pending reductions as (node, rule, edge the path must use or -1)
+    private int[] work = new int[48];
+    private int workSize;
+
+    // nodes reached by the paths of a reduction
+    private int[] ends = new int[16];
+    private int endCount;
+
+    // path ends of the search in collect as node * 2 + 1 if the path used
+    // the required edge, and the search step that last reached each one
+    private int[] frontier = new int[16];
+    private int[] nextFrontier = new int[16];
+    private int[] mark = new int[128];
+    private int step;
+
+    // edges the reductions of the current step added, as from << 32 | to,
+    // in an open addressing table with 0 for empty, and their slots
+    private long[] linkKeys = new long[64];
+    private int[] linkSlots = new int[32];
+    private int linkCount;
+
+    // true once a reduction of the current step added an edge between two
+    // nodes of the current level
+    private boolean levelEdges;
+
+    // actions of the cell being processed
+    private int[] codes = new int[4];
+
+    private int maxWidth;
+
+    public GLRDriver(ParseTables tables) {
+        this.tables = tables;
+        this.endMarker = tables.getTerminalCount() - 1;
+        levelNode = new int[tables.getStateCount()];
+        nextNode = new int[tables.getStateCount()];
+        Arrays.fill(levelNode, -1);
+        Arrays.fill(nextNode, -1);
+    }
+
+    /**
+     * @return true if tokens[from..to), terminal ids without $, is a
+     * sentence of the grammar
+     */
+    @Override
+    public boolean parse(int[] tokens, int from, int to) {
+        top = 0;
+        stack[0] = 0;
+        if (graph) {
+            clearLevel();
+            graph = false;
+        }
+        maxWidth = 1;
+        for (int i = from; i <= to; i++) {
+            int token = i == to ? endMarker : tokens[i];
+            if (token < 0 || token > endMarker || (token == endMarker && i < to)) {
+                return false;
+            }
+            int result = graph ? stepGraph(token) : stepStack(token);
+            if (result != SHIFTED) {
+                return result == ACCEPTED;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the largest number of stack tops at one input position during
+     * the last parse, counting the nodes the reductions add to a level, 1 if
+     * it never met a conflict
+     */
+    public int getMaxWidth() {
+        return maxWidth;
+    }
+
+    public ParseTables getTables() {
+        return tables;
+    }
+
+    private int stepStack(int token) {
+        int[] stack = this.stack;
+        int top = this.top;
+        while (true) {
+            int state = stack[top];
+            if (tables.hasConflicts(state) && tables.conflict(state, token) != -1) {
+                this.top = top;
+                toGraph();
+                return stepGraph(token);
+            }
+            int action = tables.action(state, token);
+            switch (ParseTables.kind(action)) {
+                case ParseTables.SHIFT:
+                    if (++top == stack.length) {
+                        stack = this.stack = Arrays.copyOf(stack, top * 2);
+                    }
+                    stack[top] = ParseTables.operand(action);
+                    this.top = top;
+                    return SHIFTED;
+                case ParseTables.REDUCE: {
+                    int rule = ParseTables.operand(action);
+                    top -= tables.getRuleLength(rule);
+                    int target = tables.goTo(stack[top], tables.getRuleLeft(rule));
+                    if (++top == stack.length) {
+                        stack = this.stack = Arrays.copyOf(stack, top * 2);
+                    }
+                    stack[top] = target;
+                    break;
+                }
+                case ParseTables.ACCEPT:
+                    return ACCEPTED;
+                default:
+                    return REJECTED;
+            }
+        }
+    }
+
+    /**
+     * Turns the stack into a chain of nodes, whose top is the only node of
+     * the current level.
+     */
+    private void toGraph() {
+        nodeCount = 0;
+        edgeCount = 0;
+        for (int k = 0; k <= top; k++) {
+            newNode(stack[k]);
+            if (k > 0) {
+                addEdge(k, k - 1);
+            }
+        }
+        levelSize = 0;
+        levelStart = top;
+        addToLevel(top);
+        graph = true;
+    }
+
+    /**
+     * Performs every reduction the token triggers on the current level, then
+     * shifts it from every node that can.
+     */
+    private int stepGraph(int token) {
+        workSize = 0;
+        clearLinks();
+        levelEdges = false;
+        for (int k = 0; k < levelSize; k++) {
+            queueReductions(level[k], token, -1);
+        }
+        while (workSize > 0) {
+            workSize -= 3;
+            int node = work[workSize];
+            int rule = work[workSize + 1];
+            collect(node, tables.getRuleLength(rule), work[workSize + 2]);
+            int left = tables.getRuleLeft(rule);
+            for (int k = 0; k < endCount; k++) {
+                reduce(ends[k], left, token);
+            }
+        }
+
+        boolean accepted = false;
+        nextSize = 0;
+        for (int k = 0; k < levelSize; k++) {
+            int node = level[k];
+            int count = actions(nodeState[node], token);
+            for (int i = 0; i < count; i++) {
+                if (ParseTables.kind(codes[i]) == ParseTables.SHIFT) {
+                    shift(ParseTables.operand(codes[i]), node);
+                } else if (ParseTables.kind(codes[i]) == ParseTables.ACCEPT) {
+                    accepted = true;
+                }
+            }
+        }
+        clearLevel();
+        if (accepted) {
+            return ACCEPTED;
+        }
+        if (nextSize == 0) {
+            return REJECTED;
+        }
+
+        int[] swap = level;
+        level = nextLevel;
+        nextLevel = swap;
+        levelSize = nextSize;
+        levelStart = level[0];
+        swap = levelNode;
+        levelNode = nextNode;
+        nextNode = swap;
+        if (levelSize == 1) {
+            toStack();
+        }
+        return SHIFTED;
+    }
+
+    /**
+     * Queues the reductions of the node on the token. With an edge, only
+     * paths through that edge are reduced, so empty reductions are left out.
+     */
+    private void queueReductions(int node, int token, int edge) {
+        int count = actions(nodeState[node], token);
+        for (int i = 0; i < count; i++) {
+            if (ParseTables.kind(codes[i]) == ParseTables.REDUCE) {
+                int rule = ParseTables.operand(codes[i]);
+                if (edge != -1 && tables.getRuleLength(rule) == 0) {
+                    continue;
+                }
+                if (workSize + 3 > work.length) {
+                    work = Arrays.copyOf(work, work.length * 2);
+                }
+                work[workSize++] = node;
+                work[workSize++] = rule;
+                work[workSize++] = edge;
+            }
+        }
+    }
+
+    /**
+     * Sets ends to the nodes length edges below node, on paths that use the
+     * edge unless it is -1. The search goes breadth first and visits every
+     * node once per step, however many paths lead to it. Edges only lead to
+     * nodes of the same or earlier levels, so a path that has not used the
+     * edge by the time it leaves the current level is dropped.
+     */
+    private void collect(int node, int length, int edge) {
+        if (mark.length < 2 * nodeCount) {
+            mark = new int[4 * nodeCount];
+            step = 0;
+        }
+        int size = 1;
+        frontier[0] = node * 2 + (edge == -1 ? 1 : 0);
+        for (int i = 0; i < length; i++) {
+            if (++step == 0) {
+                Arrays.fill(mark, -1);
+                step = 1;
+            }
+            int nextSize = 0;
+            for (int k = 0; k < size; k++) {
+                int from = frontier[k];
+                for (int e = nodeEdge[from >> 1]; e != -1; e = edgeNext[e]) {
+                    int to = edgeTarget[e] * 2 + ((from & 1) | (e == edge ? 1 : 0));
+                    if ((to & 1) == 0 && edgeTarget[e] < levelStart) {
+                        continue;
+                    }
+                    if (mark[to] != step) {
+                        mark[to] = step;
+                        if (nextSize == nextFrontier.length) {
+                            nextFrontier = Arrays.copyOf(nextFrontier, nextSize * 2);
+                        }
+                        nextFrontier[nextSize++] = to;
+                    }
+                }
+            }
+            int[] swap = frontier;
+            frontier = nextFrontier;
+            nextFrontier = swap;
+            size = nextSize;
+        }
+        endCount = 0;
+        for (int k = 0; k < size; k++) {
+            if ((frontier[k] & 1) != 0) {
+                if (endCount == ends.length) {
+                    ends = Arrays.copyOf(ends, endCount * 2);
+                }
+                ends[endCount++] = frontier[k] >> 1;
+            }
+        }
+    }
+
+    /**
+     * Pushes the goto of below on the variable to the current level. A new
+     * edge into an existing node opens new paths for the reductions already
+     * done at this level, so they are queued again for paths through it:
+     * only those of the node itself while no edge joins two nodes of the
+     * level, else those of every node of the level.
+     */
+    private void reduce(int below, int variable, int token) {
+        int state = tables.goTo(nodeState[below], variable);
+        if (state == -1) {
+            return;
+        }
+        int node = levelNode[state];
+        if (node == -1) {
+            node = newNode(state);
+            link(node, below);
+            addEdge(node, below);
+            // below is on this level after an empty reduction
+            levelEdges |= below >= levelStart;
+            addToLevel(node);
+            queueReductions(node, token, -1);
+            return;
+        }
+        if (!link(node, below)) {
+            return;
+        }
+        int edge = addEdge(node, below);
+        levelEdges |= below >= levelStart;
+        if (!levelEdges) {
+            queueReductions(node, token, edge);
+            return;
+        }
+        for (int k = 0; k < levelSize; k++) {
+            queueReductions(level[k], token, edge);
+        }
+    }
+
+    /**
+     * Records the edge from a node of the current level, which reductions
+     * add only once, so that finding a known edge does not walk the edges of
+     * the node.
+     *
+     * @return false if the edge was already recorded
+     */
+    private boolean link(int from, int to) {
+        if (2 * (linkCount + 1) > linkKeys.length) {
+            long[] keys = linkKeys;
+            int[] slots = Arrays.copyOf(linkSlots, linkCount);
+            linkKeys = new long[keys.length * 2];
+            linkCount = 0;
+            for (int slot : slots) {
+                insertLink(keys[slot] - 1);
+            }
+        }
+        return insertLink((long) from << 32 | to);
+    }
+
+    private boolean insertLink(long key) {
+        // keys are stored plus one, so the edge 0 -> 0 is not empty
+        int mask = linkKeys.length - 1;
+        int slot = (int) ((key * 0x9E3779B97F4A7C15L) >>> 32) & mask;
+        while (linkKeys[slot] != 0) {
+            if (linkKeys[slot] == key + 1) {
+                return false;
+            }
+            slot = (slot + 1) & mask;
+        }
+        linkKeys[slot] = key + 1;
+        if (linkCount == linkSlots.length) {
+            linkSlots = Arrays.copyOf(linkSlots, linkCount * 2);
+        }
+        linkSlots[linkCount++] = slot;
+        return true;
+    }
+
+    private void clearLinks() {
+        for (int i = 0; i < linkCount; i++) {
+            linkKeys[linkSlots[i]] = 0;
+        }
+        linkCount = 0;
+    }
+
+    private void shift(int state, int below) {
+        int node = nextNode[state];
+        if (node == -1) {
+            node = newNode(state);
+            nextNode[state] = node;
+            if (nextSize == nextLevel.length) {
+                nextLevel = Arrays.copyOf(nextLevel, nextSize * 2);
+            }
+            nextLevel[nextSize++] = node;
+            maxWidth = Math.max(maxWidth, nextSize);
+        }
+        addEdge(node, below);
+    }
+
+    /**
+     * Goes back to the plain stack if the only stack top has a single path
+     * to the bottom.
+     */
+    private void toStack() {
+        int depth = 0;
+        for (int n = level[0]; nodeEdge[n] != -1; n = edgeTarget[nodeEdge[n]]) {
+            if (edgeNext[nodeEdge[n]] != -1) {
+                return;
+            }
+            depth++;
+        }
+        if (depth >= stack.length) {
+            stack = new int[Math.max(stack.length * 2, depth + 1)];
+        }
+        top = depth;
+        int n = level[0];
+        for (int k = depth; k > 0; k--) {
+            stack[k] = nodeState[n];
+            n = edgeTarget[nodeEdge[n]];
+        }
+        stack[0] = nodeState[n];
+        clearLevel();
+        graph = false;
+    }
+
+    // stores the codes of every action of the cell, returns their number
+    private int actions(int state, int token) {
+        int conflict = tables.hasConflicts(state) ? tables.conflict(state, token) : -1;
+        if (conflict == -1) {
+            codes[0] = tables.action(state, token);
+            return codes[0] == ParseTables.ERROR ? 0 : 1;
+        }
+        int from = tables.getConflictStart(conflict);
+        int count = tables.getConflictEnd(conflict) - from;
+        if (count > codes.length) {
+            codes = new int[count];
+        }
+        for (int i = 0; i < count; i++) {
+            codes[i] = tables.getConflictAction(from + i);
+        }
+        return count;
+    }
+
+    private int newNode(int state) {
+        if (nodeCount == nodeState.length) {
+            nodeState = Arrays.copyOf(nodeState, nodeCount * 2);
+            nodeEdge = Arrays.copyOf(nodeEdge, nodeCount * 2);
+        }
+        nodeState[nodeCount] = state;
+        nodeEdge[nodeCount] = -1;
+        return nodeCount++;
+    }
+
+    private int addEdge(int from, int to) {
+        if (edgeCount == edgeTarget.length) {
+            edgeTarget = Arrays.copyOf(edgeTarget, edgeCount * 2);
+            edgeNext = Arrays.copyOf(edgeNext, edgeCount * 2);
+        }
+        edgeTarget[edgeCount] = to;
+        edgeNext[edgeCount] = nodeEdge[from];
+        nodeEdge[from] = edgeCount;
+        return edgeCount++;
+    }
+
+    private void addToLevel(int node) {
+        if (levelSize == level.length) {
+            level = Arrays.copyOf(level, levelSize * 2);
+        }
+        level[levelSize++] = node;
+        levelNode[nodeState[node]] = node;
+        maxWidth = Math.max(maxWidth, levelSize);
+    }
+
+    private void clearLevel() {
+        for (int k = 0; k < levelSize; k++) {
+            levelNode[nodeState[level[k]]] = -1;
+        }
+        levelSize = 0;
+    }
+}
@@ -1,12 +1,21 @@
 package core;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Objects;
 
 public class Grammar {
 
+    public static final String START = "S'";
+
+    public static final String END_MARKER = "$";
+
+    public static final String EPSILON = "epsilon";
+
     private ArrayList<Rule> rules;
 
     private HashSet<String> terminals;
@@ -19,10 +28,31 @@ public class Grammar {
 
     private HashMap<String, HashSet<String>> fallowSets;
 
+    // symbol table: terminals, $, epsilon, then S' and the variables
+    private String[] symbols;
+
+    private HashMap<String, Integer> symbolIds;
+
+    private int endMarker;
+
+    private int epsilon;
+
+    // FIRST (without epsilon) and FOLLOW of every variable, by variable index
+    private TerminalSet[] first;
+
+    private TerminalSet[] follow;
+
+    private boolean[] nullable;
+
+    private HashMap<Rule, Integer> ruleIndex;
+
+    // rules of each variable, indexed by (variable id - start id)
+    private List<Rule>[] rulesByLeft;
+
     public Grammar(String s) {
         rules = new ArrayList<>();
-        terminals = new HashSet<>();
-        variables = new HashSet<>();
+        terminals = new LinkedHashSet<>();
+        variables = new LinkedHashSet<>();
         int line = 0;
 
         for (String st : s.split("\n")) {
@@ -34,7 +64,7 @@ public class Grammar {
             for (String rule : rulesRightSide) {
                 String[] rightSide = rule.trim().split("\\s+");
                 for (String terminal : rightSide) {
-                    if (!terminal.equals("epsilon")) {
+                    if (!terminal.equals(EPSILON)) {
                         terminals.add(terminal);
                     }
                 }
@@ -42,7 +72,7 @@ public class Grammar {
                 // Add augmented start rule
                 if (line == 0) {
                     startVariable = leftSide;
-                    rules.add(new Rule("S'", new String[]{startVariable}));
+                    rules.add(new Rule(START, new String[]{startVariable}));
                 }
                 rules.add(new Rule(leftSide, rightSide));
                 line++;
@@ -53,12 +83,16 @@ public class Grammar {
             terminals.remove(variable);
         }
 
+        createSymbolTable();
+
         System.out.println("Rules: ");
         for (int i = 0; i < rules.size(); i++) {
             System.out.println(i + " : " + rules.get(i));
         }
 
+        computeNullable();
         computeFirstSets();
+        computeSuffixFirstSets();
         computeFollowSet();
     }
 
@@ -67,12 +101,11 @@ public class Grammar {
     }
 
     public int findRuleIndex(Rule rule) {
-        for (int i = 0; i < rules.size(); i++) {
-            if (rules.get(i).equals(rule)) {
-                return i;
-            }
+        if (rule.getIndex() != -1 && rules.get(rule.getIndex()) == rule) {
+            return rule.getIndex();
         }
-        return -1;
+        Integer index = ruleIndex.get(rule);
+        return index == null ? -1 : index;
     }
 
     public HashSet<String> getVariables() {
@@ -83,105 +116,293 @@ public class Grammar {
         return startVariable;
     }
 
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private void createSymbolTable() {
+        symbols = new String[terminals.size() + variables.size() + 3];
+        symbolIds = new HashMap<>();
+        int id = 0;
+        for (String terminal : terminals) {
+            symbols[id++] = terminal;
+        }
+        endMarker = id;
+        symbols[id++] = END_MARKER;
+        epsilon = id;
+        symbols[id++] = EPSILON;
+        symbols[id++] = START;
+        for (String variable : variables) {
+            symbols[id++] = variable;
+        }
+        for (int i = 0; i < symbols.length; i++) {
+            symbolIds.put(symbols[i], i);
+        }
+
+        ruleIndex = new HashMap<>();
+        rulesByLeft = new List[getVariableCount()];
+        for (int v = 0; v < rulesByLeft.length; v++) {
+            rulesByLeft[v] = new ArrayList<>();
+        }
+
+        for (int r = 0; r < rules.size(); r++) {
+            Rule rule = rules.get(r);
+            rule.index = r;
+            ruleIndex.putIfAbsent(rule, r);
+            rule.leftId = symbolIds.get(rule.getLeftSide());
+            String[] rightSide = rule.getRightSide();
+            if (rightSide.length == 1 && rightSide[0].equals(EPSILON)) {
+                rule.rightIds = new int[0];
+            } else {
+                rule.rightIds = new int[rightSide.length];
+                for (int i = 0; i < rightSide.length; i++) {
+                    rule.rightIds[i] = symbolIds.get(rightSide[i]);
+                }
+            }
+            rulesByLeft[rule.leftId - getStartId()].add(rule);
+        }
+        for (int v = 0; v < rulesByLeft.length; v++) {
+            rulesByLeft[v] = Collections.unmodifiableList(rulesByLeft[v]);
+        }
+    }
+
+    /**
+     * A variable is nullable once all symbols of one of its rules are. Every
+     * rule keeps a count of right side symbols not yet known to be nullable,
+     * and each variable is processed once when it becomes nullable.
+     */
+    private void computeNullable() {
+        nullable = new boolean[symbols.length];
+        int[] pending = new int[rules.size()];
+        ArrayList<ArrayList<Rule>> occurrences = new ArrayList<>();
+        for (int i = 0; i < symbols.length; i++) {
+            occurrences.add(new ArrayList<>());
+        }
+        int[] worklist = new int[getVariableCount()];
+        int size = 0;
+        for (Rule rule : rules) {
+            for (int symbol : rule.getRightIds()) {
+                occurrences.get(symbol).add(rule);
+            }
+            pending[rule.getIndex()] = rule.getRightIds().length;
+            if (pending[rule.getIndex()] == 0 && !nullable[rule.getLeftId()]) {
+                nullable[rule.getLeftId()] = true;
+                worklist[size++] = rule.getLeftId();
+            }
+        }
+        for (int i = 0; i < size; i++) {
+            for (Rule rule : occurrences.get(worklist[i])) {
+                if (--pending[rule.getIndex()] == 0 && !nullable[rule.getLeftId()]) {
+                    nullable[rule.getLeftId()] = true;
+                    worklist[size++] = rule.getLeftId();
+                }
+            }
+        }
+    }
+
+    /**
+     * FIRST(A) starts with the terminals that begin a right side of A after a
+     * nullable prefix; A depends on every variable in such a prefix. The
+     * dependencies are closed with the digraph traversal, one pass per
+     * strongly connected component.
+     */
     private void computeFirstSets() {
-        firstSets = new HashMap<>();
-        for (String s : variables) {
-            firstSets.put(s, new HashSet<>());
-        }
-
-        while (true) {
-            boolean isChanged = false;
-            for (String variable : variables) {
-                HashSet<String> firstSet = new HashSet<>();
-                for (Rule rule : rules) {
-                    if (rule.getLeftSide().equals(variable)) {
-                        HashSet<String> addAll = computeFirst(rule.getRightSide(), 0);
-                        firstSet.addAll(addAll);
-                    }
+        first = new TerminalSet[getVariableCount()];
+        ArrayList<ArrayList<Integer>> edges = new ArrayList<>();
+        for (int v = 0; v < first.length; v++) {
+            first[v] = new TerminalSet(getTerminalCount());
+            edges.add(new ArrayList<>());
+        }
+        for (Rule rule : rules) {
+            int left = rule.getLeftId() - getStartId();
+            for (int symbol : rule.getRightIds()) {
+                if (!isVariable(symbol)) {
+                    first[left].add(symbol);
+                    break;
                 }
-                if (!firstSets.get(variable).containsAll(firstSet)) {
-                    isChanged = true;
-                    firstSets.get(variable).addAll(firstSet);
+                edges.get(left).add(symbol - getStartId());
+                if (!nullable[symbol]) {
+                    break;
                 }
             }
-            if (!isChanged) break;
         }
+        Digraph.traverse(toArrays(edges), first);
 
-        firstSets.put("S'", firstSets.get(startVariable));
+        firstSets = new HashMap<>();
+        for (String variable : variables) {
+            firstSets.put(variable, toNames(symbolIds.get(variable), first));
+        }
+        firstSets.put(START, firstSets.get(startVariable));
     }
 
- 
+    /**
+     * FOLLOW(B) starts with FIRST of what comes after each occurrence of B;
+     * when that rest is nullable, B depends on the left side of the rule.
+     */
     private void computeFollowSet() {
-        fallowSets = new HashMap<>();
-        for (String s : variables) {
-            fallowSets.put(s, new HashSet<>());
-        }
-        HashSet<String> start = new HashSet<>();
-        start.add("$");
-        fallowSets.put("S'", start);
-
-        while (true) {
-            boolean isChange = false;
-            for (String variable : variables) {
-                for (Rule rule : rules) {
-                    for (int i = 0; i < rule.getRightSide().length; i++) {
-                        if (rule.getRightSide()[i].equals(variable)) {
-                            HashSet<String> first;
-                            if (i == rule.getRightSide().length - 1) {
-                                first = fallowSets.get(rule.getLeftSide());
-                            } else {
-                                first = computeFirst(rule.getRightSide(), i + 1);
-                                if (first.contains("epsilon")) {
-                                    first.remove("epsilon");
-                                    first.addAll(fallowSets.get(rule.getLeftSide()));
-                                }
-                            }
-                            if (!fallowSets.get(variable).containsAll(first)) {
-                                isChange = true;
-                                fallowSets.get(variable).addAll(first);
-                            }
-                        }
+        follow = new TerminalSet[getVariableCount()];
+        ArrayList<ArrayList<Integer>> edges = new ArrayList<>();
+        for (int v = 0; v < follow.length; v++) {
+            follow[v] = new TerminalSet(getTerminalCount());
+            edges.add(new ArrayList<>());
+        }
+        follow[0].add(endMarker);
+        for (Rule rule : rules) {
+            int[] rightSide = rule.getRightIds();
+            for (int i = 0; i < rightSide.length; i++) {
+                if (isVariable(rightSide[i])) {
+                    follow[rightSide[i] - getStartId()].addAll(getFirst(rule, i + 1));
+                    if (isNullable(rule, i + 1)) {
+                        edges.get(rightSide[i] - getStartId()).add(rule.getLeftId() - getStartId());
                     }
                 }
             }
-            if (!isChange) break;
         }
-    }
+        Digraph.traverse(toArrays(edges), follow);
 
-    public HashSet<String> computeFirst(String[] string, int index) {
-        HashSet<String> first = new HashSet<>();
-        if (index == string.length) return first;
+        fallowSets = new HashMap<>();
+        for (String variable : variables) {
+            fallowSets.put(variable, toNames(symbolIds.get(variable), follow));
+        }
+        fallowSets.put(START, toNames(getStartId(), follow));
+    }
 
-        if (terminals.contains(string[index]) || string[index].equals("epsilon")) {
-            first.add(string[index]);
-            return first;
+    /**
+     * For every rule and dot position, FIRST of the rest of the right side
+     * (without epsilon) and whether it is nullable. Equal sets are shared.
+     */
+    private void computeSuffixFirstSets() {
+        HashMap<TerminalSet, TerminalSet> shared = new HashMap<>();
+        for (Rule rule : rules) {
+            int[] rightSide = rule.getRightIds();
+            rule.suffixFirst = new TerminalSet[rightSide.length + 1];
+            rule.suffixNullable = new boolean[rightSide.length + 1];
+            rule.suffixFirst[rightSide.length] = shared.computeIfAbsent(new TerminalSet(getTerminalCount()), k -> k);
+            rule.suffixNullable[rightSide.length] = true;
+            for (int i = rightSide.length - 1; i >= 0; i--) {
+                TerminalSet first;
+                if (isVariable(rightSide[i])) {
+                    first = new TerminalSet(this.first[rightSide[i] - getStartId()]);
+                    if (nullable[rightSide[i]]) {
+                        first.addAll(rule.suffixFirst[i + 1]);
+                    }
+                } else {
+                    first = new TerminalSet(getTerminalCount());
+                    first.add(rightSide[i]);
+                }
+                rule.suffixFirst[i] = shared.computeIfAbsent(first, k -> k);
+                rule.suffixNullable[i] = nullable[rightSide[i]] && rule.suffixNullable[i + 1];
+            }
         }
+    }
 
-        if (variables.contains(string[index])) {
-            first.addAll(firstSets.get(string[index]));
+    private static int[][] toArrays(ArrayList<ArrayList<Integer>> lists) {
+        int[][] arrays = new int[lists.size()][];
+        for (int i = 0; i < arrays.length; i++) {
+            arrays[i] = new int[lists.get(i).size()];
+            for (int j = 0; j < arrays[i].length; j++) {
+                arrays[i][j] = lists.get(i).get(j);
+            }
         }
+        return arrays;
+    }
 
-        if (first.contains("epsilon") && index != string.length - 1) {
-            first.remove("epsilon");
-            first.addAll(computeFirst(string, index + 1));
+    private HashSet<String> toNames(int variable, TerminalSet[] sets) {
+        HashSet<String> names = new HashSet<>();
+        TerminalSet set = sets[variable - getStartId()];
+        for (int t = set.next(0); t >= 0; t = set.next(t + 1)) {
+            names.add(symbols[t]);
+        }
+        if (sets == first && nullable[variable]) {
+            names.add(EPSILON);
         }
-        return first;
+        return names;
+    }
+
+    /**
+     * FIRST of rule.getRightIds()[index..] without epsilon, precomputed when
+     * the grammar is built. The returned set is shared and must not be changed.
+     */
+    public TerminalSet getFirst(Rule rule, int index) {
+        return rule.suffixFirst[index];
+    }
+
+    public boolean isNullable(Rule rule, int index) {
+        return rule.suffixNullable[index];
+    }
+
+    public boolean isNullable(int symbol) {
+        return nullable[symbol];
     }
 
     public HashSet<Rule> getRuledByLeftVariable(String variable) {
-        HashSet<Rule> variableRules = new HashSet<>();
-        for (Rule rule : rules) {
-            if (rule.getLeftSide().equals(variable)) {
-                variableRules.add(rule);
-            }
+        Integer id = symbolIds.get(variable);
+        if (id == null || !isVariable(id)) {
+            return new HashSet<>();
         }
-        return variableRules;
+        return new HashSet<>(getRuledByLeftVariable(id));
+    }
+
+    /**
+     * The rules of a variable in grammar order, from an index built when the
+     * grammar is loaded. The list is shared and unmodifiable.
+     */
+    public List<Rule> getRuledByLeftVariable(int variable) {
+        return rulesByLeft[variable - getStartId()];
     }
 
     public boolean isVariable(String s) {
         return variables.contains(s);
     }
 
+    public boolean isVariable(int id) {
+        return id > epsilon;
+    }
+
+    public boolean isTerminal(int id) {
+        return id >= 0 && id <= endMarker;
+    }
+
+    /**
+     * @return the id of the symbol, or -1 if it does not occur in the grammar
+     */
+    public int getSymbolId(String symbol) {
+        Integer id = symbolIds.get(symbol);
+        return id == null ? -1 : id;
+    }
+
+    public String getSymbol(int id) {
+        return symbols[id];
+    }
+
+    public int getSymbolCount() {
+        return symbols.length;
+    }
+
+    /**
+     * Terminal ids are 0 .. getTerminalCount() - 1, the last one being $.
+     */
+    public int getTerminalCount() {
+        return endMarker + 1;
+    }
+
+    public int getEndMarkerId() {
+        return endMarker;
+    }
+
+    public int getEpsilonId() {
+        return epsilon;
+    }
+
+    /**
+     * Variable ids start at the id of S', so (id - getStartId()) is a dense
+     * variable index.
+     */
+    public int getStartId() {
+        return epsilon + 1;
+    }
+
+    public int getVariableCount() {
+        return symbols.length - getStartId();
+    }
+
     public HashMap<String, HashSet<String>> getFirstSets() {
         return firstSets;
     }
@@ -0,0 +1,202 @@
+package core;
+
+/**
+ * Writes the source of a standalone Java parser class for packed tables. The
+ * generated class only needs java.util: the packed arrays are static finals
+ * decoded from string constants when the class is loaded, and parse runs the
+ * same loop as ParseDriver over them.
+ */
+public class JavaGenerator {
+
+    // characters per string constant; a constant may take 65535 bytes of
+    // modified UTF-8, and one character takes at most 3
+    private static final int CHUNK = 16000;
+
+    private final Grammar grammar;
+
+    private final ParseTables tables;
+
+    public JavaGenerator(Grammar grammar, ParseTables tables) {
+        this.grammar = grammar;
+        this.tables = tables;
+    }
+
+    /**
+     * @param packageName the package of the class, or null or empty for the
+     * default package
+     */
+    public String generate(String packageName, String className) {
+        StringBuilder sb = new StringBuilder();
+        if (packageName != null && !packageName.isEmpty()) {
+            sb.append("package ").append(packageName).append(";\n\n");
+        }
+        sb.append("import java.util.Arrays;\n");
+        sb.append("import java.util.HashMap;\n\n");
+
+        sb.append("/**\n");
+        sb.append(" * LR parser generated for the grammar\n");
+        sb.append(" *\n");
+        for (Rule rule : grammar.getRules()) {
+            sb.append(" * ").append(rule.getIndex()).append(" : ").append(javadoc(rule.toString())).append("\n");
+        }
+        sb.append(" *\n");
+        sb.append(" * Tokens are indexes into TERMINALS. An instance keeps its stack between\n");
+        sb.append(" * calls and is not thread safe.\n");
+        sb.append(" */\n");
+        sb.append("public final class ").append(className).append(" {\n\n");
+
+        sb.append("    public static final String[] TERMINALS = {");
+        for (int t = 0; t < grammar.getEndMarkerId(); t++) {
+            sb.append(t == 0 ? "" : ", ");
+            appendString(sb, grammar.getSymbol(t));
+        }
+        sb.append("};\n\n");
+        sb.append("    private static final int END = ").append(grammar.getEndMarkerId()).append(";\n\n");
+
+        int[][] arrays = tables.getArrays();
+        for (int i = 0; i < arrays.length; i++) {
+            if (ParseTables.ARRAYS[i].startsWith("LOOKAHEAD_")) {
+                // only error recovery reads the lookaheads of default reductions
+                continue;
+            }
+            sb.append("    private static final int[] ").append(ParseTables.ARRAYS[i]).append(" = decode(");
+            appendEncoded(sb, arrays[i]);
+            sb.append(");\n\n");
+        }
+
+        sb.append("    private static final HashMap<String, Integer> TERMINAL_IDS = new HashMap<>();\n\n");
+        sb.append("    static {\n");
+        sb.append("        for (int t = 0; t < TERMINALS.length; t++) {\n");
+        sb.append("            TERMINAL_IDS.put(TERMINALS[t], t);\n");
+        sb.append("        }\n");
+        sb.append("    }\n\n");
+
+        sb.append("    private int[] stack = new int[64];\n\n");
+
+        sb.append("    /**\n");
+        sb.append("     * @return the token id of a terminal name, or -1\n");
+        sb.append("     */\n");
+        sb.append("    public static int tokenId(String terminal) {\n");
+        sb.append("        Integer id = TERMINAL_IDS.get(terminal);\n");
+        sb.append("        return id == null ? -1 : id;\n");
+        sb.append("    }\n\n");
+
+        sb.append("    public boolean parse(int[] tokens) {\n");
+        sb.append("        return parse(tokens, 0, tokens.length);\n");
+        sb.append("    }\n\n");
+
+        sb.append("    /**\n");
+        sb.append("     * @return true if tokens[from..to) is a sentence of the grammar\n");
+        sb.append("     */\n");
+        sb.append("    public boolean parse(int[] tokens, int from, int to) {\n");
+        sb.append("        int[] stack = this.stack;\n");
+        sb.append("        int top = 0;\n");
+        sb.append("        stack[0] = 0;\n");
+        sb.append("        int index = from;\n");
+        sb.append("        int token = token(tokens, index, to);\n");
+        sb.append("        while (token >= 0) {\n");
+        sb.append("            int state = stack[top];\n");
+        sb.append("            int action = DEFAULT_REDUCE[state];\n");
+        sb.append("            if (action == 0) {\n");
+        sb.append("                int slot = ACTION_BASE[state] + token;\n");
+        sb.append("                action = ACTION_CHECK[slot] == state ? ACTION_VALUE[slot] : 0;\n");
+        sb.append("            }\n");
+        sb.append("            switch (action & 3) {\n");
+        sb.append("                case 1:\n");
+        sb.append("                    if (++top == stack.length) {\n");
+        sb.append("                        stack = this.stack = Arrays.copyOf(stack, top * 2);\n");
+        sb.append("                    }\n");
+        sb.append("                    stack[top] = action >>> 2;\n");
+        sb.append("                    token = token(tokens, ++index, to);\n");
+        sb.append("                    break;\n");
+        sb.append("                case 2: {\n");
+        sb.append("                    int rule = action >>> 2;\n");
+        sb.append("                    top -= RULE_LENGTH[rule];\n");
+        sb.append("                    int slot = GOTO_BASE[stack[top]] + RULE_LEFT[rule];\n");
+        sb.append("                    if (++top == stack.length) {\n");
+        sb.append("                        stack = this.stack = Arrays.copyOf(stack, top * 2);\n");
+        sb.append("                    }\n");
+        sb.append("                    stack[top] = GOTO_VALUE[slot] - 1;\n");
+        sb.append("                    break;\n");
+        sb.append("                }\n");
+        sb.append("                case 3:\n");
+        sb.append("                    return true;\n");
+        sb.append("                default:\n");
+        sb.append("                    return false;\n");
+        sb.append("            }\n");
+        sb.append("        }\n");
+        sb.append("        return false;\n");
+        sb.append("    }\n\n");
+
+        sb.append("    private static int token(int[] tokens, int index, int to) {\n");
+        sb.append("        if (index == to) {\n");
+        sb.append("            return END;\n");
+        sb.append("        }\n");
+        sb.append("        int token = tokens[index];\n");
+        sb.append("        return token >= 0 && token < END ? token : -1;\n");
+        sb.append("    }\n\n");
+
+        sb.append("    private static int[] decode(String... parts) {\n");
+        sb.append("        String s = String.join(\"\", parts);\n");
+        sb.append("        int[] a = new int[s.length() / 2];\n");
+        sb.append("        for (int i = 0; i < a.length; i++) {\n");
+        sb.append("            a[i] = s.charAt(2 * i) << 16 | s.charAt(2 * i + 1);\n");
+        sb.append("        }\n");
+        sb.append("        return a;\n");
+        sb.append("    }\n");
+        sb.append("}\n");
+        return sb.toString();
+    }
+
+    /**
+     * @return text that neither ends the comment nor holds a backslash,
+     * which javac would read as the start of a unicode escape even in a
+     * comment; both are written as HTML character references
+     */
+    private static String javadoc(String text) {
+        return text.replace("\\", "&#92;").replace("*/", "*&#47;");
+    }
+
+    /**
+     * Appends the array as string constants holding two characters, the
+     * high and low 16 bits, per int.
+     */
+    private static void appendEncoded(StringBuilder sb, int[] array) {
+        sb.append("\n            \"");
+        int chars = 0;
+        for (int value : array) {
+            for (int shift = 16; shift >= 0; shift -= 16) {
+                if (chars == CHUNK) {
+                    sb.append("\",\n            \"");
+                    chars = 0;
+                }
+                appendChar(sb, (char) (value >>> shift));
+                chars++;
+            }
+        }
+        sb.append("\"");
+    }
+
+    private static void appendString(StringBuilder sb, String s) {
+        sb.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            appendChar(sb, s.charAt(i));
+        }
+        sb.append('"');
+    }
+
+    /**
+     * Appends c escaped for a string literal. Characters below 256 use
+     * three-digit octal escapes, because a unicode escape of a line break or
+     * quote would be translated before the literal is read.
+     */
+    private static void appendChar(StringBuilder sb, char c) {
+        if (c >= 0x20 && c < 0x7f && c != '"' && c != '\\') {
+            sb.append(c);
+        } else if (c < 256) {
+            sb.append(String.format("\\%03o", (int) c));
+        } else {
+            sb.append(String.format("\\u%04x", (int) c));
+        }
+    }
+}
@@ -1,148 +1,191 @@
 package core;
 
+import LARA.LR0Item;
+import LARA.LR1Item;
+import LARA.LR1Parser;
+import LARA.LR1State;
 import java.util.*;
 
 public class LALRConverter {
 
     public static class Result {
-        public HashMap<String, Action>[] actionTable;   
-        public HashMap<String, Integer>[] goToTable;   
+        public ParseTables tables;
         public boolean hasConflict;
         public String message;
-        public String mergeInfo;
-        public String lalrActionStr;              
-        public String lalrGoToStr;
-        public String lalrStatesStr;
-    }
-
-    public static Result convert(HashMap<String, Action>[] actionTableOrig,
-                                 HashMap<String, Integer>[] goToTableOrig,
-                                 String canonicalCollectionStr) {
-
-        Result res = new Result();
+        // groups[newState] lists the merged canonical states, oldToNew maps back
+        public int[][] groups;
+        public int[] oldToNew;
+        public String[] stateLabels;
+        public List<List<LR1Item>> states;
+        private Grammar grammar;
+
+        public String mergeInfo() {
+            StringBuilder mergeSb = new StringBuilder("Merged states:\n");
+            boolean merged = false;
+            for (int[] g : groups) {
+                if (g.length > 1) {
+                    for (int i = 0; i < g.length; i++) {
+                        mergeSb.append("I").append(g[i]);
+                        if (i != g.length - 1) mergeSb.append(" and ");
+                    }
+                    mergeSb.append("\n");
+                    merged = true;
+                }
+            }
+            if (!merged) {
+                mergeSb.append("No merged states\n");
+            }
+            return mergeSb.toString();
+        }
 
-        Map<Integer, LinkedHashMap<String, LinkedHashSet<String>>> itemsByState =
-                parseItemsWithLookahead(canonicalCollectionStr);
+        public String actionTableStr() {
+            return buildActionStr(tables, grammar, stateLabels);
+        }
 
-        Map<String, List<Integer>> groups = buildGroupsByLR0Core(itemsByState);
+        public String goToTableStr() {
+            return buildGotoStr(tables, grammar, stateLabels);
+        }
 
-        Map<Integer, Integer> oldToNew = new HashMap<>();
-        int newIndex = 0;
-        StringBuilder mergeSb = new StringBuilder("Merged states:\n");
+        public String generateJava(String packageName, String className) {
+            return new JavaGenerator(grammar, tables).generate(packageName, className);
+        }
 
-        for (List<Integer> g : groups.values()) {
-            for (int s : g) {
-                oldToNew.put(s, newIndex);
-            }
-            if (g.size() > 1) {
-                for (int i = 0; i < g.size(); i++) {
-                    mergeSb.append("I").append(g.get(i));
-                    if (i != g.size() - 1) mergeSb.append(" and ");
+        public String statesStr() {
+            StringBuilder sb = new StringBuilder();
+            sb.append("\nLALR States (After Merge)\n");
+            for (int id = 0; id < states.size(); id++) {
+                sb.append("I").append(stateLabels[id]).append(" :\n");
+                for (LR1Item item : states.get(id)) {
+                    sb.append(new LR0Item(item.getRule(), item.getDotPointer()));
+                    TerminalSet look = item.getLookahead();
+                    if (!look.isEmpty()) {
+                        sb.append(" ,");
+                        for (int t = look.next(0); t >= 0; t = look.next(t + 1)) {
+                            if (t != look.next(0)) sb.append(",");
+                            sb.append(grammar.getSymbol(t));
+                        }
+                    }
+                    sb.append("\n");
                 }
-                mergeSb.append("\n");
+                sb.append("\n");
             }
-            newIndex++;
-        }
-        if (mergeSb.toString().equals("Merged states:\n")) {
-            mergeSb.append("No merged states\n");
+            return sb.toString();
         }
+    }
 
-        int n = newIndex;
+    /**
+     * Merges the canonical LR(1) states of the parser that share an LR(0)
+     * core. States are grouped by a structural key (rule number and dot of
+     * every item), and the lookaheads and table rows of a group are merged.
+     * A merged cell with several actions, from the canonical conflict lists
+     * or from merging, keeps them all like the canonical tables do.
+     */
+    public static Result convert(LR1Parser parser) {
 
-        @SuppressWarnings("unchecked")
-        HashMap<String, Action>[] newAction = new HashMap[n];
-        @SuppressWarnings("unchecked")
-        HashMap<String, Integer>[] newGoto = new HashMap[n];
+        Result res = new Result();
+        Grammar grammar = parser.getGrammar();
+        ArrayList<LR1State> canonical = parser.getCanonicalCollection();
+        res.grammar = grammar;
 
-        for (int i = 0; i < n; i++) {
-            newAction[i] = new HashMap<>();
-            newGoto[i] = new HashMap<>();
+        LinkedHashMap<CoreKey, ArrayList<Integer>> groupMap = new LinkedHashMap<>();
+        for (int s = 0; s < canonical.size(); s++) {
+            groupMap.computeIfAbsent(new CoreKey(canonical.get(s)), k -> new ArrayList<>()).add(s);
         }
 
-    
-        String[] stateLabels = new String[n];
-        for (List<Integer> g : groups.values()) {
-            if (g.isEmpty()) continue;
-            int ni = oldToNew.get(g.get(0));
-            List<Integer> sorted = new ArrayList<>(g);
-            Collections.sort(sorted);
+        int n = groupMap.size();
+        res.groups = new int[n][];
+        res.oldToNew = new int[canonical.size()];
+        res.stateLabels = new String[n];
+        res.states = new ArrayList<>();
+        int newIndex = 0;
+        for (ArrayList<Integer> g : groupMap.values()) {
+            res.groups[newIndex] = new int[g.size()];
             StringBuilder lab = new StringBuilder();
-            for (int s : sorted) {
+            LinkedHashMap<Long, LR1Item> merged = new LinkedHashMap<>();
+            for (int i = 0; i < g.size(); i++) {
+                int s = g.get(i);
+                res.groups[newIndex][i] = s;
+                res.oldToNew[s] = newIndex;
                 lab.append(s);
+                for (LR1Item item : canonical.get(s).getItems()) {
+                    LR1Item existing = merged.get(CoreKey.code(item));
+                    if (existing == null) {
+                        merged.put(CoreKey.code(item), new LR1Item(item.getRule(), item.getDotPointer(),
+                                new TerminalSet(item.getLookahead())));
+                    } else {
+                        existing.getLookahead().addAll(item.getLookahead());
+                    }
+                }
             }
-            stateLabels[ni] = lab.toString();
+            res.stateLabels[newIndex] = lab.toString();
+            res.states.add(new ArrayList<>(merged.values()));
+            newIndex++;
         }
 
+        ParseTables orig = parser.getTables();
+        int[][] newAction = new int[n][grammar.getTerminalCount()];
+        // every action of a merged cell with more than one, preferred first
+        int[][][] newConflicts = new int[n][][];
+        int[][] newGoto = new int[n][grammar.getVariableCount()];
+        for (int[] row : newGoto) {
+            Arrays.fill(row, -1);
+        }
+
+        String[] stateLabels = res.stateLabels;
         boolean conflict = false;
         StringBuilder conflicts = new StringBuilder();
 
-    
-        for (int old = 0; old < actionTableOrig.length; old++) {
-            Integer niObj = oldToNew.get(old);
-            if (niObj == null) continue; 
-            int ni = niObj;
-
-            for (Map.Entry<String, Action> e : actionTableOrig[old].entrySet()) {
-                String symbol = e.getKey();
-                Action orig = e.getValue();
-
-                Action incoming;
-                if (orig.getType() == ActionType.S) {
-                    int oldTarget = orig.getOperand();
-                    int newTarget = oldToNew.get(oldTarget);
-                    incoming = new Action(ActionType.S, newTarget);
-                } else {
-                    incoming = new Action(orig.getType(), orig.getOperand());
-                }
+        for (int old = 0; old < canonical.size(); old++) {
+            int ni = res.oldToNew[old];
 
-                Action existing = newAction[ni].get(symbol);
-                if (existing == null) {
-                    newAction[ni].put(symbol, incoming);
-                } else {
-                    if (existing.getType() != incoming.getType()) {
+            for (int t = 0; t < grammar.getTerminalCount(); t++) {
+                // a conflicting canonical cell brings all of its actions
+                for (int incoming : orig.actions(old, t)) {
+                    if (ParseTables.kind(incoming) == ParseTables.SHIFT) {
+                        incoming = ParseTables.shift(res.oldToNew[ParseTables.operand(incoming)]);
+                    }
+
+                    int existing = newAction[ni][t];
+                    if (existing == ParseTables.ERROR) {
+                        newAction[ni][t] = incoming;
+                    } else if (existing != incoming) {
+                        if (newConflicts[ni] == null) {
+                            newConflicts[ni] = new int[grammar.getTerminalCount()][];
+                        }
+                        int[] list = newConflicts[ni][t] == null ? new int[]{existing} : newConflicts[ni][t];
+                        int[] merged = insert(list, incoming);
+                        if (merged == list) {
+                            continue;
+                        }
+                        newConflicts[ni][t] = merged;
+                        newAction[ni][t] = merged[0];
                         conflict = true;
                         conflicts.append("Conflict at state ")
                                 .append(stateLabels[ni])
                                 .append(" symbol ")
-                                .append(symbol)
+                                .append(grammar.getSymbol(t))
                                 .append(" : existing=")
                                 .append(formatAction(existing, stateLabels))
                                 .append(" new=")
                                 .append(formatAction(incoming, stateLabels))
                                 .append("\n");
-                    } else if (existing.getType() == ActionType.ACC) {
-                    } else {
-                        if (existing.getOperand() != incoming.getOperand()) {
-                            conflict = true;
-                            conflicts.append("Conflict at state ")
-                                    .append(stateLabels[ni])
-                                    .append(" symbol ")
-                                    .append(symbol)
-                                    .append(" : existing=")
-                                    .append(formatAction(existing, stateLabels))
-                                    .append(" new=")
-                                    .append(formatAction(incoming, stateLabels))
-                                    .append("\n");
-                        }
                     }
                 }
             }
 
-            
-            for (Map.Entry<String, Integer> e : goToTableOrig[old].entrySet()) {
-                String var = e.getKey();
-                int oldTarget = e.getValue();
-                int newTarget = oldToNew.get(oldTarget);
+            for (int v = 0; v < grammar.getVariableCount(); v++) {
+                if (orig.goTo(old, v) == -1) continue;
+                int newTarget = res.oldToNew[orig.goTo(old, v)];
 
-                Integer existing = newGoto[ni].get(var);
-                if (existing == null) {
-                    newGoto[ni].put(var, newTarget);
-                } else if (!existing.equals(newTarget)) {
+                int existing = newGoto[ni][v];
+                if (existing == -1) {
+                    newGoto[ni][v] = newTarget;
+                } else if (existing != newTarget) {
                     conflict = true;
                     conflicts.append("Goto conflict at state ")
                             .append(stateLabels[ni])
                             .append(" variable ")
-                            .append(var)
+                            .append(grammar.getSymbol(v + grammar.getStartId()))
                             .append(" (existing -> ")
                             .append(stateLabels[existing])
                             .append(" , new -> ")
@@ -153,7 +196,6 @@ public class LALRConverter {
         }
 
         res.hasConflict = conflict;
-        res.mergeInfo = mergeSb.toString();
 
         if (conflict) {
             res.message = "Grammar is NOT LALR(1)\n" + conflicts;
@@ -161,146 +203,73 @@ public class LALRConverter {
             res.message = "no shift/reduce or \nno reduce/reduce conflict\nso, it is a LALR(1) grammar";
         }
 
-        res.actionTable = newAction;
-        res.goToTable = newGoto;
-        res.lalrActionStr = buildActionStr(newAction, stateLabels);
-        res.lalrGoToStr = buildGotoStr(newGoto, stateLabels);
-        res.lalrStatesStr = buildMergedLalrStates(groups, itemsByState, oldToNew, stateLabels);
+        res.tables = ParseTables.pack(grammar, newAction, newGoto, newConflicts);
 
         return res;
     }
 
+    /**
+     * @return list with code inserted in ParseTables.order, or list itself
+     * if it already has the code
+     */
+    private static int[] insert(int[] list, int code) {
+        for (int c : list) {
+            if (c == code) {
+                return list;
+            }
+        }
+        int[] result = Arrays.copyOf(list, list.length + 1);
+        int k = list.length;
+        for (; k > 0 && ParseTables.order(code) < ParseTables.order(result[k - 1]); k--) {
+            result[k] = result[k - 1];
+        }
+        result[k] = code;
+        return result;
+    }
+
 
-    private static String formatAction(Action a, String[] labels) {
-        if (a == null) return "-";
-        if (a.getType() == ActionType.ACC) return "ACC";
-        if (a.getType() == ActionType.S) {
-            int idx = a.getOperand();
+    private static String formatAction(int a, String[] labels) {
+        if (a == ParseTables.ERROR) return "-";
+        if (ParseTables.kind(a) == ParseTables.ACCEPT) return "ACC";
+        if (ParseTables.kind(a) == ParseTables.SHIFT) {
+            int idx = ParseTables.operand(a);
             String lab = (idx >= 0 && idx < labels.length && labels[idx] != null)
                     ? labels[idx]
                     : String.valueOf(idx);
             return "S " + lab;
         }
-        return "R " + a.getOperand();
+        return "R " + ParseTables.operand(a);
     }
 
-    private static Map<Integer, LinkedHashMap<String, LinkedHashSet<String>>> parseItemsWithLookahead(String txt) {
-        Map<Integer, LinkedHashMap<String, LinkedHashSet<String>>> m = new LinkedHashMap<>();
-        Integer current = null;
-
-        for (String rawLine : txt.split("\\r?\\n")) {
-            String l = rawLine.trim();
-            if (l.isEmpty()) continue;
-
-            if (l.startsWith("State")) {
-                String numStr = l.replaceAll("[^0-9]", "");
-                if (!numStr.isEmpty()) {
-                    current = Integer.parseInt(numStr);
-                    m.put(current, new LinkedHashMap<>());
-                } else current = null;
-                continue;
-            }
+    private static final class CoreKey {
 
-            if (current == null) continue;
-
-            if (l.contains("->")) {
-                String corePart = l;
-                String lookPart = "";
-                int idx = l.indexOf(" , ");
-                if (idx < 0) idx = l.indexOf(" ,");
-                if (idx < 0) idx = l.indexOf(",");
-                if (idx >= 0) {
-                    corePart = l.substring(0, idx).trim();
-                    lookPart = l.substring(idx + 1).trim();
-                    if (lookPart.startsWith(",")) lookPart = lookPart.substring(1).trim();
-                }
+        private final long[] items;
 
-                corePart = corePart.replaceAll("\\s+\\.\\s+", ".");
-                LinkedHashSet<String> lookSet = new LinkedHashSet<>();
-                if (!lookPart.isEmpty()) {
-                    lookPart = lookPart.replaceAll("[\\[\\]\\{\\}]", "");
-                    String[] toks = lookPart.split("\\s*,\\s*|\\s+");
-                    for (String t : toks) {
-                        t = t.trim();
-                        if (t.isEmpty()) continue;
-                        t = t.replaceAll("[^\\w\\$<>/=*+-]", "");
-                        if (!t.isEmpty()) lookSet.add(t);
-                    }
-                }
-                LinkedHashMap<String, LinkedHashSet<String>> stateMap = m.get(current);
-                if (!stateMap.containsKey(corePart)) {
-                    stateMap.put(corePart, lookSet);
-                } else {
-                    stateMap.get(corePart).addAll(lookSet);
-                }
+        private final int hash;
+
+        CoreKey(LR1State state) {
+            items = new long[state.getItems().size()];
+            int i = 0;
+            for (LR1Item item : state.getItems()) {
+                items[i++] = code(item);
             }
+            Arrays.sort(items);
+            hash = Arrays.hashCode(items);
         }
-        return m;
-    }
 
-    private static Map<String, List<Integer>> buildGroupsByLR0Core(
-            Map<Integer, LinkedHashMap<String, LinkedHashSet<String>>> itemsByState) {
-
-        Map<String, List<Integer>> groups = new LinkedHashMap<>();
-        for (Integer s : itemsByState.keySet()) {
-            List<String> cores = new ArrayList<>(itemsByState.get(s).keySet());
-            Collections.sort(cores);
-            String key = String.join("|", cores);
-            groups.computeIfAbsent(key, k -> new ArrayList<>()).add(s);
+        static long code(LR1Item item) {
+            return ((long) item.getRuleIndex() << 32) | item.getDotPointer();
         }
-        return groups;
-    }
 
-    private static String buildMergedLalrStates(
-            Map<String, List<Integer>> groups,
-            Map<Integer, LinkedHashMap<String, LinkedHashSet<String>>> itemsByState,
-            Map<Integer, Integer> oldToNew,
-            String[] labels) {
-
-        Map<Integer, LinkedHashMap<String, LinkedHashSet<String>>> merged = new LinkedHashMap<>();
-
-        for (List<Integer> oldStates : groups.values()) {
-            if (oldStates.isEmpty()) continue;
-            int newId = oldToNew.get(oldStates.get(0));
-            merged.putIfAbsent(newId, new LinkedHashMap<>());
-            LinkedHashMap<String, LinkedHashSet<String>> map = merged.get(newId);
-
-            for (int old : oldStates) {
-                LinkedHashMap<String, LinkedHashSet<String>> stateItems = itemsByState.get(old);
-                if (stateItems == null) continue;
-                for (var it : stateItems.entrySet()) {
-                    String core = it.getKey();
-                    LinkedHashSet<String> la = it.getValue();
-                    if (!map.containsKey(core)) {
-                        map.put(core, new LinkedHashSet<>(la));
-                    } else {
-                        map.get(core).addAll(la);
-                    }
-                }
-            }
+        @Override
+        public int hashCode() {
+            return hash;
         }
 
-        StringBuilder sb = new StringBuilder();
-        sb.append("\nLALR States (After Merge)\n");
-        for (var e : merged.entrySet()) {
-            int id = e.getKey();
-            String name = (labels[id] != null ? labels[id] : ("I" + id));
-            sb.append("I").append(name).append(" :\n");
-            var map = e.getValue();
-            for (var it : map.entrySet()) {
-                String core = it.getKey();
-                LinkedHashSet<String> look = it.getValue();
-                String laStr = String.join(",", look);
-                if (laStr.isEmpty()) {
-                    sb.append(core).append("\n");
-                } else {
-                    sb.append(core).append(" ,").append(laStr).append("\n");
-                }
-            }
-            sb.append("\n");
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof CoreKey && Arrays.equals(items, ((CoreKey) o).items);
         }
-
-        return sb.toString();
     }
 
     private static List<String> orderTerminals(Set<String> cols) {
@@ -329,9 +298,13 @@ public class LALRConverter {
         return ordered;
     }
 
-    private static String buildActionStr(HashMap<String, Action>[] t, String[] labels) {
+    private static String buildActionStr(ParseTables t, Grammar grammar, String[] labels) {
         Set<String> cols = new LinkedHashSet<>();
-        for (var r : t) cols.addAll(r.keySet());
+        for (int i = 0; i < t.getStateCount(); i++) {
+            for (int c = 0; c < t.getTerminalCount(); c++) {
+                if (t.explicitAction(i, c) != ParseTables.ERROR) cols.add(grammar.getSymbol(c));
+            }
+        }
 
         List<String> columns = orderTerminals(cols);
 
@@ -344,12 +317,11 @@ public class LALRConverter {
         }
         sb.append("\n");
 
-        for (int i = 0; i < t.length; i++) {
+        for (int i = 0; i < t.getStateCount(); i++) {
             String rowName = (labels[i] != null ? labels[i] : String.valueOf(i));
             sb.append(String.format("%-8s", rowName));
             for (String c : columns) {
-                Action a = t[i].get(c);
-                String val = formatAction(a, labels);
+                String val = formatAction(t.explicitAction(i, grammar.getSymbolId(c)), labels);
                 sb.append(String.format("%-12s", val));
             }
             sb.append("\n");
@@ -357,11 +329,13 @@ public class LALRConverter {
         return sb.toString();
     }
 
-    private static String buildGotoStr(HashMap<String, Integer>[] t, String[] labels) {
+    private static String buildGotoStr(ParseTables t, Grammar grammar, String[] labels) {
         StringBuilder sb = new StringBuilder();
         Set<String> vars = new LinkedHashSet<>();
-        for (HashMap<String, Integer> row : t) {
-            vars.addAll(row.keySet());
+        for (int i = 0; i < t.getStateCount(); i++) {
+            for (int v = 0; v < t.getVariableCount(); v++) {
+                if (t.goTo(i, v) != -1) vars.add(grammar.getSymbol(v + grammar.getStartId()));
+            }
         }
         List<String> orderedVars = orderVariables(vars);
 
@@ -372,12 +346,12 @@ public class LALRConverter {
         }
         sb.append("\n");
 
-        for (int i = 0; i < t.length; i++) {
+        for (int i = 0; i < t.getStateCount(); i++) {
             String rowName = (labels[i] != null ? labels[i] : String.valueOf(i));
             sb.append(String.format("%-8s", rowName));
             for (String v : orderedVars) {
-                Integer to = t[i].get(v);
-                if (to == null) {
+                int to = t.goTo(i, grammar.getSymbolId(v) - grammar.getStartId());
+                if (to == -1) {
                     sb.append(String.format("%-12s", "-"));
                 } else {
                     String lab = (labels[to] != null ? labels[to] : String.valueOf(to));
@@ -1,15 +1,16 @@
 package core;
 
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.file.Path;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Stack;
 
 public abstract class LRParser {
 
-    public HashMap<String, Integer>[] goToTable;
-    public HashMap<String, Action>[] actionTable;
+    protected ParseTables tables;
     protected Grammar grammar;
+    private ParseDriver driver;
 
     public LRParser(Grammar grammar) {
         this.grammar = grammar;
@@ -18,37 +19,108 @@ public abstract class LRParser {
     protected abstract void createGoToTable();
 
     public boolean accept(ArrayList<String> inputs) {
-        inputs.add("$");
-        int index = 0;
-        Stack<String> stack = new Stack<>();
-        stack.add("0");
-        while(index < inputs.size()){
-            int state = Integer.valueOf(stack.peek());
-            String nextInput = inputs.get(index);
-            Action action = actionTable[state].get(nextInput);
-            if(action == null){
+        int[] tokens = new int[inputs.size()];
+        for (int i = 0; i < tokens.length; i++) {
+            tokens[i] = grammar.getSymbolId(inputs.get(i));
+            if (!grammar.isTerminal(tokens[i])) {
                 return false;
-            }else if(action.getType() == ActionType.S){
-                stack.push(nextInput);
-                stack.push(action.getOperand()+"");
-                index++;
-            }else if(action.getType() == ActionType.R){
-                int ruleIndex = action.getOperand();
-                Rule rule = grammar.getRules().get(ruleIndex);
-                String leftSide = rule.getLeftSide();
-                int rightSideLength = rule.getRightSide().length;
-                for(int i=0; i <2*rightSideLength ; i++){
-                    stack.pop();
+            }
+        }
+        return accept(tokens, tokens.length);
+    }
+
+    /**
+     * Parses the input with a GLRDriver, which follows every action of a
+     * conflicting cell, so it also accepts the sentences of grammars with
+     * conflicts.
+     */
+    public boolean acceptGLR(ArrayList<String> inputs) {
+        int[] tokens = new int[inputs.size()];
+        for (int i = 0; i < tokens.length; i++) {
+            tokens[i] = grammar.getSymbolId(inputs.get(i));
+            if (!grammar.isTerminal(tokens[i])) {
+                return false;
+            }
+        }
+        return new GLRDriver(tables).parse(tokens);
+    }
+
+    /**
+     * Parses the first length terminal ids of tokens (without $). The driver
+     * and its stack are reused between calls.
+     */
+    public boolean accept(int[] tokens, int length) {
+        return driver().parse(tokens, 0, length);
+    }
+
+    /**
+     * Parses whitespace separated tokens as they are read, pushing each one
+     * to the driver, so the input is never held in memory.
+     */
+    public boolean accept(Reader in) throws IOException {
+        ParseDriver driver = driver();
+        driver.reset();
+        StringBuilder token = new StringBuilder();
+        char[] buffer = new char[8192];
+        int length;
+        while ((length = in.read(buffer)) != -1) {
+            for (int i = 0; i < length; i++) {
+                if (!Character.isWhitespace(buffer[i])) {
+                    token.append(buffer[i]);
+                } else if (token.length() > 0 && !push(driver, token)) {
+                    return false;
                 }
-                int nextState = Integer.valueOf(stack.peek());
-                stack.push(leftSide);
-                int variableState = goToTable[nextState].get(leftSide);
-                stack.push(variableState+"");
-            }else if(action.getType() == ActionType.ACC){
-                return true;
             }
         }
-        return false;
+        if (token.length() > 0 && !push(driver, token)) {
+            return false;
+        }
+        return driver.end();
+    }
+
+    /**
+     * Parses a UTF-8 file, scanned by lexer straight from a memory map.
+     */
+    public boolean accept(Path file, Lexer lexer) throws IOException {
+        return lexer.parse(file, driver());
+    }
+
+    /**
+     * Parses the input with error recovery.
+     *
+     * @return the positions in inputs of all syntax errors, empty if the
+     * input is accepted
+     */
+    public int[] findErrors(ArrayList<String> inputs) {
+        int[] tokens = new int[inputs.size()];
+        for (int i = 0; i < tokens.length; i++) {
+            tokens[i] = grammar.getSymbolId(inputs.get(i));
+        }
+        ParseDriver driver = driver();
+        driver.setRecovery(true);
+        try {
+            driver.parse(tokens);
+        } finally {
+            driver.setRecovery(false);
+        }
+        int[] errors = new int[driver.getErrorCount()];
+        for (int i = 0; i < errors.length; i++) {
+            errors[i] = (int) driver.getErrorPosition(i);
+        }
+        return errors;
+    }
+
+    private boolean push(ParseDriver driver, StringBuilder token) {
+        int id = grammar.getSymbolId(token.toString());
+        token.setLength(0);
+        return grammar.isTerminal(id) && driver.push(id);
+    }
+
+    private ParseDriver driver() {
+        if (driver == null || driver.getTables() != tables) {
+            driver = new ParseDriver(tables);
+        }
+        return driver;
     }
 
     private String buildTable(String title, String rowHeader,
@@ -69,7 +141,7 @@ public abstract class LRParser {
 
         sb.append("-".repeat(8 + columns.length * colWidth)).append("\n");
 
-        for (int state = 0; state < actionTable.length; state++) {
+        for (int state = 0; state < tables.getStateCount(); state++) {
             sb.append(String.format("%-8d", state));
             for (String col : columns) {
                 String val = cellProvider.apply(state, col);
@@ -87,8 +159,8 @@ public abstract class LRParser {
         String[] vars = grammar.getVariables().toArray(new String[0]);
 
         return buildTable("GOTO TABLE", "State", vars, (state, variable) -> {
-            Integer val = goToTable[state].get(variable);
-            return (val == null ? "-" : val.toString());
+            int val = tables.goTo(state, grammar.getSymbolId(variable) - grammar.getStartId());
+            return (val == -1 ? "-" : Integer.toString(val));
         });
     }
 
@@ -100,7 +172,7 @@ public abstract class LRParser {
         String[] cols = terminals.toArray(new String[0]);
 
         return buildTable("ACTION TABLE", "State", cols, (state, terminal) -> {
-            Action a = actionTable[state].get(terminal);
+            Action a = tables.getAction(state, grammar.getSymbolId(terminal));
             return (a == null ? "-" : a.toString());
         });
     }
@@ -109,60 +181,62 @@ public abstract class LRParser {
         return grammar;
     }
 
+    public ParseTables getTables() {
+        return tables;
+    }
+
+    /**
+     * @return an immutable, thread safe parser over the current tables
+     */
+    public CompiledParser compile() {
+        return new CompiledParser(grammar, tables);
+    }
+
+    /**
+     * @return the source of a standalone parser class for the tables
+     */
+    public String generateJava(String packageName, String className) {
+        return new JavaGenerator(grammar, tables).generate(packageName, className);
+    }
+
+    /**
+     * Saves the tables to a file that TableFile.read loads without the
+     * grammar.
+     */
+    public void writeTables(Path file) throws IOException {
+        TableFile.write(file, grammar, tables);
+    }
+
+    /**
+     * @return a compiled parser that also skips unit reductions when
+     * skipUnitReductions is set; use it only for recognition
+     */
+    public CompiledParser compile(boolean skipUnitReductions) {
+        return compile(skipUnitReductions, false);
+    }
+
+    /**
+     * @param bytecode recognize with a hidden class compiled from the tables
+     * by BytecodeCompiler
+     */
+    public CompiledParser compile(boolean skipUnitReductions, boolean bytecode) {
+        return new CompiledParser(grammar, skipUnitReductions ? tables.skipUnitReductions() : tables, bytecode);
+    }
+
+    /**
+     * @return the last TraceBuffer.DEFAULT_CAPACITY actions of parsing the
+     * input as a table, followed by the result
+     */
     public String acceptTrace(ArrayList<String> inputs) {
-        ArrayList<String> in = new ArrayList<>(inputs);
-        in.add("$");
-        int index = 0;
-        Stack<String> stack = new Stack<>();
-        stack.add("0");
-        StringBuilder sb = new StringBuilder();
-        String header = String.format("%-40s%-40s%-20s", "Stack", "Input", "Action");
-        sb.append(header).append("\n");
-        sb.append("-".repeat(100)).append("\n");
-        while(index < in.size()){
-            int state = Integer.valueOf(stack.peek());
-            String nextInput = in.get(index);
-            Action action = actionTable[state].get(nextInput);
-            String stackStr = String.join(" ", stack);
-            String inputStr = String.join(" ", in.subList(index, in.size()));
-            String actStr;
-            if(action == null){
-                actStr = "error";
-                sb.append(String.format("%-40s%-40s%-20s", stackStr, inputStr, actStr)).append("\n");
-                sb.append("\nnot accepted");
-                return sb.toString();
-            } else if(action.getType() == ActionType.S){
-                actStr = "S" + action.getOperand();
-                sb.append(String.format("%-40s%-40s%-20s", stackStr, inputStr, actStr)).append("\n");
-                stack.push(nextInput);
-                stack.push(action.getOperand()+"");
-                index++;
-            } else if(action.getType() == ActionType.R){
-                int ruleIndex = action.getOperand();
-                Rule rule = grammar.getRules().get(ruleIndex);
-                actStr = "R" + ruleIndex;
-                sb.append(String.format("%-40s%-40s%-20s", stackStr, inputStr, actStr)).append("\n");
-                int rightSideLength = rule.getRightSide().length;
-                for(int i=0; i < 2*rightSideLength; i++){
-                    if(!stack.isEmpty()) stack.pop();
-                }
-                int nextState = Integer.valueOf(stack.peek());
-                stack.push(rule.getLeftSide());
-                Integer variableState = goToTable[nextState].get(rule.getLeftSide());
-                if(variableState == null){
-                    sb.append("\nnot accepted");
-                    return sb.toString();
-                }
-                stack.push(variableState+"");
-            } else if(action.getType() == ActionType.ACC){
-                actStr = "ACC";
-                sb.append(String.format("%-40s%-40s%-20s", stackStr, "$", actStr)).append("\n");
-                sb.append("\naccepted");
-                return sb.toString();
-            }
+        int[] tokens = new int[inputs.size()];
+        for (int i = 0; i < tokens.length; i++) {
+            tokens[i] = grammar.getSymbolId(inputs.get(i));
         }
-        sb.append("\nnot accepted");
-        return sb.toString();
+        TraceBuffer trace = new TraceBuffer(TraceBuffer.DEFAULT_CAPACITY);
+        ParseDriver driver = new ParseDriver(tables);
+        driver.setTrace(trace);
+        boolean accepted = driver.parse(tokens);
+        return trace.render(grammar, inputs) + (accepted ? "\naccepted" : "\nnot accepted");
     }
 
 }
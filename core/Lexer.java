@@ -0,0 +1,459 @@
+package core;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Scanner over the terminals of a grammar, driven by a minimized DFA. Every
+ * terminal matches its own name literally, unless a regular expression
+ * (see Nfa) is defined for it, e.g. "[a-z_]\w*" for id. The scanner takes
+ * the longest match; on a tie a literal terminal wins over a defined one,
+ * and then the lower terminal id. White space between tokens is skipped.
+ *
+ * The DFA is built by subset construction from the NFA of all terminals and
+ * minimized by partition refinement. Characters are mapped to classes of
+ * characters that no terminal tells apart, so a transition row has one
+ * entry per class instead of per character.
+ */
+public final class Lexer {
+
+    // bytes of a file mapped at a time by parse
+    private static final int WINDOW = 1 << 26;
+
+    private final int classCount;
+
+    // class of each ASCII character; other characters are looked up in bounds
+    private final int[] asciiClass = new int[128];
+
+    // class k holds the characters [bounds[k], bounds[k + 1])
+    private final int[] bounds;
+
+    // next[state * classCount + class], -1 if no token continues
+    private final int[] next;
+
+    // terminal id matched in each state, -1 if none
+    private final int[] accept;
+
+    private Lexer(int[] bounds, int[] next, int[] accept) {
+        this.bounds = bounds;
+        this.classCount = bounds.length;
+        this.next = next;
+        this.accept = accept;
+        for (int c = 0; c < asciiClass.length; c++) {
+            asciiClass[c] = classOf(c);
+        }
+    }
+
+    public static Lexer build(Grammar grammar) {
+        return build(grammar, Map.of());
+    }
+
+    /**
+     * @param definitions regular expressions of terminals by name
+     * @throws IllegalArgumentException if a definition names no terminal or
+     * is malformed
+     */
+    public static Lexer build(Grammar grammar, Map<String, String> definitions) {
+        for (String name : definitions.keySet()) {
+            int id = grammar.getSymbolId(name);
+            if (id < 0 || id >= grammar.getEndMarkerId()) {
+                throw new IllegalArgumentException("not a terminal: " + name);
+            }
+        }
+        Nfa nfa = new Nfa();
+        int start = nfa.newState();
+        int terminals = grammar.getEndMarkerId();
+        for (int t = 0; t < terminals; t++) {
+            String name = grammar.getSymbol(t);
+            String regex = definitions.get(name);
+            int[] fragment = regex == null ? nfa.literal(name) : nfa.regex(regex);
+            nfa.addEpsilon(start, fragment[0]);
+            nfa.setAccept(fragment[1], t, regex == null ? t : terminals + t);
+        }
+        return new Builder(nfa, start).build();
+    }
+
+    /**
+     * @return the terminal ids of the input; a character that starts no
+     * token becomes a -1, which the parser reports as a syntax error
+     */
+    public int[] tokenize(CharSequence input) {
+        return tokenize(input, null);
+    }
+
+    public int[] tokenize(char[] input, int from, int to) {
+        return tokenize(CharBuffer.wrap(input, from, to - from), null);
+    }
+
+    /**
+     * @param lexemes receives the text of every token, or null
+     */
+    public int[] tokenize(CharSequence input, List<String> lexemes) {
+        int[] tokens = new int[16];
+        int count = 0;
+        int length = input.length();
+        int position = 0;
+        while (true) {
+            while (position < length && Character.isWhitespace(input.charAt(position))) {
+                position++;
+            }
+            if (position == length) {
+                break;
+            }
+            int token = -1;
+            int end = position + 1;
+            int state = 0;
+            for (int i = position; i < length; i++) {
+                char c = input.charAt(i);
+                state = next[state * classCount + (c < 128 ? asciiClass[c] : classOf(c))];
+                if (state == -1) {
+                    break;
+                }
+                if (accept[state] != -1) {
+                    token = accept[state];
+                    end = i + 1;
+                }
+            }
+            if (count == tokens.length) {
+                tokens = Arrays.copyOf(tokens, count * 2);
+            }
+            tokens[count++] = token;
+            if (lexemes != null) {
+                lexemes.add(input.subSequence(position, end).toString());
+            }
+            position = end;
+        }
+        return Arrays.copyOf(tokens, count);
+    }
+
+    /**
+     * Parses a UTF-8 file with driver. The file is memory-mapped one window
+     * at a time and scanned in place, so neither the text nor its tokens
+     * are ever held on the heap, whatever the size of the file.
+     *
+     * @return true if the input is accepted
+     */
+    public boolean parse(Path file, ParseDriver driver) throws IOException {
+        driver.reset();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            long offset = 0;
+            long window = WINDOW;
+            while (offset < size) {
+                long length = Math.min(window, size - offset);
+                boolean last = offset + length == size;
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+                if (!scan(buffer, last, driver)) {
+                    return false;
+                }
+                if (buffer.position() == 0 && !last) {
+                    // a token longer than the window
+                    window = Math.min(window * 2, Integer.MAX_VALUE);
+                }
+                offset += buffer.position();
+            }
+        }
+        return driver.end();
+    }
+
+    /**
+     * Scans the UTF-8 bytes from the position to the limit of input in place
+     * and pushes every token to driver, like tokenize. Unless last is set,
+     * a token that may go on past the limit is left for the next call: the
+     * position is moved to the end of the last token pushed.
+     *
+     * @return false once the driver rejects the input
+     */
+    public boolean scan(ByteBuffer input, boolean last, ParseDriver driver) {
+        int limit = input.limit();
+        int position = input.position();
+        while (true) {
+            while (position < limit) {
+                int b = input.get(position);
+                int decoded = b >= 0 ? 1 << 24 | b : decode(input, position, limit, last);
+                if (decoded == -1 || !Character.isWhitespace(decoded & 0xffffff)) {
+                    break;
+                }
+                position += decoded >>> 24;
+            }
+            if (position == limit) {
+                break;
+            }
+            int token = -1;
+            int end = -1;
+            int state = 0;
+            int i = position;
+            while (i < limit) {
+                int b = input.get(i);
+                int length = 1;
+                if (b >= 0) {
+                    state = next[state * classCount + asciiClass[b]];
+                } else {
+                    int decoded = decode(input, i, limit, last);
+                    if (decoded == -1) {
+                        break;
+                    }
+                    int c = decoded & 0xffffff;
+                    length = decoded >>> 24;
+                    if (c < Character.MIN_SUPPLEMENTARY_CODE_POINT) {
+                        state = next[state * classCount + classOf(c)];
+                    } else {
+                        state = next[state * classCount + classOf(Character.highSurrogate(c))];
+                        if (state != -1) {
+                            state = next[state * classCount + classOf(Character.lowSurrogate(c))];
+                        }
+                    }
+                }
+                if (state == -1) {
+                    break;
+                }
+                i += length;
+                if (accept[state] != -1) {
+                    token = accept[state];
+                    end = i;
+                }
+            }
+            if (state != -1 && !last) {
+                // the token might go on in the next bytes
+                break;
+            }
+            if (token == -1) {
+                int b = input.get(position);
+                end = position + (b >= 0 ? 1 : decode(input, position, limit, true) >>> 24);
+            }
+            if (!driver.push(token)) {
+                input.position(end);
+                return false;
+            }
+            position = end;
+        }
+        input.position(position);
+        return true;
+    }
+
+    /**
+     * Decodes the UTF-8 sequence at index. A malformed byte decodes as
+     * U+FFFD of length 1.
+     *
+     * @return the code point, with the length of the sequence in the top
+     * byte; -1 if the sequence is cut off by the limit and last is not set
+     */
+    private static int decode(ByteBuffer input, int index, int limit, boolean last) {
+        int b = input.get(index) & 0xff;
+        int length = b >= 0xf0 ? 4 : b >= 0xe0 ? 3 : b >= 0xc0 ? 2 : 0;
+        int c = b & (0x7f >> length);
+        if (length == 0 || b >= 0xf8) {
+            return 1 << 24 | 0xfffd;
+        }
+        for (int k = 1; k < length; k++) {
+            if (index + k == limit) {
+                return last ? 1 << 24 | 0xfffd : -1;
+            }
+            int next = input.get(index + k) & 0xff;
+            if ((next & 0xc0) != 0x80) {
+                return 1 << 24 | 0xfffd;
+            }
+            c = c << 6 | (next & 0x3f);
+        }
+        int min = length == 2 ? 0x80 : length == 3 ? 0x800 : 0x10000;
+        if (c < min || c > Character.MAX_CODE_POINT || (c >= 0xd800 && c <= 0xdfff)) {
+            return 1 << 24 | 0xfffd;
+        }
+        return length << 24 | c;
+    }
+
+    private int classOf(int c) {
+        int k = Arrays.binarySearch(bounds, c);
+        return k >= 0 ? k : -k - 2;
+    }
+
+    /**
+     * @return the number of states of the minimized DFA
+     */
+    public int getStateCount() {
+        return accept.length;
+    }
+
+    public int getClassCount() {
+        return classCount;
+    }
+
+    private static final class Builder {
+
+        private final Nfa nfa;
+
+        private final int start;
+
+        private int[] bounds;
+
+        // classes of the character edge of every NFA state
+        private BitSet[] edgeClasses;
+
+        Builder(Nfa nfa, int start) {
+            this.nfa = nfa;
+            this.start = start;
+        }
+
+        Lexer build() {
+            computeClasses();
+
+            // subset construction; DFA state 0 is the closure of the start
+            ArrayList<BitSet> states = new ArrayList<>();
+            HashMap<BitSet, Integer> index = new HashMap<>();
+            BitSet first = new BitSet();
+            first.set(start);
+            closure(first);
+            states.add(first);
+            index.put(first, 0);
+            int[] next = new int[64 * bounds.length];
+            for (int s = 0; s < states.size(); s++) {
+                if ((s + 1) * bounds.length > next.length) {
+                    next = Arrays.copyOf(next, next.length * 2);
+                }
+                BitSet state = states.get(s);
+                for (int k = 0; k < bounds.length; k++) {
+                    BitSet target = new BitSet();
+                    for (int q = state.nextSetBit(0); q >= 0; q = state.nextSetBit(q + 1)) {
+                        if (edgeClasses[q] != null && edgeClasses[q].get(k)) {
+                            target.set(nfa.getTarget(q));
+                        }
+                    }
+                    if (target.isEmpty()) {
+                        next[s * bounds.length + k] = -1;
+                        continue;
+                    }
+                    closure(target);
+                    Integer t = index.get(target);
+                    if (t == null) {
+                        t = states.size();
+                        states.add(target);
+                        index.put(target, t);
+                    }
+                    next[s * bounds.length + k] = t;
+                }
+            }
+
+            int[] accept = new int[states.size()];
+            for (int s = 0; s < accept.length; s++) {
+                int best = -1;
+                BitSet state = states.get(s);
+                for (int q = state.nextSetBit(0); q >= 0; q = state.nextSetBit(q + 1)) {
+                    if (nfa.getToken(q) != -1 && (best == -1 || nfa.getRank(q) < nfa.getRank(best))) {
+                        best = q;
+                    }
+                }
+                accept[s] = best == -1 ? -1 : nfa.getToken(best);
+            }
+            return minimize(next, accept);
+        }
+
+        /**
+         * Splits the characters into classes at every range end of an edge,
+         * and gives every edge the set of classes it covers.
+         */
+        private void computeClasses() {
+            TreeSet<Integer> cuts = new TreeSet<>();
+            cuts.add(0);
+            for (int q = 0; q < nfa.size(); q++) {
+                int[] ranges = nfa.getRanges(q);
+                for (int i = 0; ranges != null && i < ranges.length; i += 2) {
+                    cuts.add(ranges[i]);
+                    if (ranges[i + 1] < Nfa.MAX) {
+                        cuts.add(ranges[i + 1] + 1);
+                    }
+                }
+            }
+            bounds = new int[cuts.size()];
+            int n = 0;
+            for (int cut : cuts) {
+                bounds[n++] = cut;
+            }
+            edgeClasses = new BitSet[nfa.size()];
+            for (int q = 0; q < nfa.size(); q++) {
+                int[] ranges = nfa.getRanges(q);
+                if (ranges != null) {
+                    edgeClasses[q] = new BitSet(bounds.length);
+                    for (int i = 0; i < ranges.length; i += 2) {
+                        int from = Arrays.binarySearch(bounds, ranges[i]);
+                        int to = ranges[i + 1] == Nfa.MAX ? bounds.length : Arrays.binarySearch(bounds, ranges[i + 1] + 1);
+                        edgeClasses[q].set(from, to);
+                    }
+                }
+            }
+        }
+
+        private void closure(BitSet set) {
+            int[] work = new int[nfa.size()];
+            int size = 0;
+            for (int q = set.nextSetBit(0); q >= 0; q = set.nextSetBit(q + 1)) {
+                work[size++] = q;
+            }
+            while (size > 0) {
+                for (int to : nfa.getEpsilon(work[--size])) {
+                    if (!set.get(to)) {
+                        set.set(to);
+                        work[size++] = to;
+                    }
+                }
+            }
+        }
+
+        /**
+         * Moore's partition refinement: states start in blocks by accepted
+         * terminal, and a block is split while its states go to different
+         * blocks on some class. The blocks are the states of the result,
+         * numbered so that the block of state 0 is 0.
+         */
+        private Lexer minimize(int[] next, int[] accept) {
+            int n = accept.length;
+            int classes = bounds.length;
+            int[] block = new int[n];
+            HashMap<Integer, Integer> byToken = new HashMap<>();
+            for (int s = 0; s < n; s++) {
+                block[s] = byToken.computeIfAbsent(accept[s], k -> byToken.size());
+            }
+            int blockCount = byToken.size();
+            while (true) {
+                HashMap<List<Integer>, Integer> signatures = new HashMap<>();
+                int[] refined = new int[n];
+                for (int s = 0; s < n; s++) {
+                    Integer[] signature = new Integer[classes + 1];
+                    signature[0] = block[s];
+                    for (int k = 0; k < classes; k++) {
+                        int t = next[s * classes + k];
+                        signature[k + 1] = t == -1 ? -1 : block[t];
+                    }
+                    refined[s] = signatures.computeIfAbsent(Arrays.asList(signature), key -> signatures.size());
+                }
+                block = refined;
+                if (signatures.size() == blockCount) {
+                    break;
+                }
+                blockCount = signatures.size();
+            }
+
+            int[] minNext = new int[blockCount * classes];
+            int[] minAccept = new int[blockCount];
+            for (int s = 0; s < n; s++) {
+                minAccept[block[s]] = accept[s];
+                for (int k = 0; k < classes; k++) {
+                    int t = next[s * classes + k];
+                    minNext[block[s] * classes + k] = t == -1 ? -1 : block[t];
+                }
+            }
+            return new Lexer(bounds, minNext, minAccept);
+        }
+    }
+}
@@ -0,0 +1,294 @@
+package core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Thompson NFA that Lexer builds from the terminals of a grammar. Every state
+ * has epsilon edges and at most one edge on a set of characters, given as
+ * sorted, disjoint, inclusive [lo, hi] ranges.
+ *
+ * Regular expressions support alternation |, grouping ( ), the postfix
+ * operators * + ?, classes [a-z_] and [^...], . for any character but a line
+ * break, the escapes \d \w \s, and \ before any other character to take it
+ * literally.
+ */
+final class Nfa {
+
+    static final char MAX = Character.MAX_VALUE;
+
+    private final ArrayList<int[]> epsilon = new ArrayList<>();
+
+    private final ArrayList<int[]> ranges = new ArrayList<>();
+
+    private final ArrayList<Integer> target = new ArrayList<>();
+
+    // accepted terminal and its priority, lower wins; -1 if not accepting
+    private final ArrayList<Integer> token = new ArrayList<>();
+
+    private final ArrayList<Integer> rank = new ArrayList<>();
+
+    // the regex being parsed
+    private String pattern;
+
+    private int index;
+
+    int newState() {
+        epsilon.add(new int[0]);
+        ranges.add(null);
+        target.add(-1);
+        token.add(-1);
+        rank.add(-1);
+        return epsilon.size() - 1;
+    }
+
+    int size() {
+        return epsilon.size();
+    }
+
+    void addEpsilon(int from, int to) {
+        int[] edges = epsilon.get(from);
+        edges = Arrays.copyOf(edges, edges.length + 1);
+        edges[edges.length - 1] = to;
+        epsilon.set(from, edges);
+    }
+
+    int[] getEpsilon(int state) {
+        return epsilon.get(state);
+    }
+
+    /**
+     * @return the ranges of the character edge of state, or null
+     */
+    int[] getRanges(int state) {
+        return ranges.get(state);
+    }
+
+    int getTarget(int state) {
+        return target.get(state);
+    }
+
+    void setAccept(int state, int token, int rank) {
+        this.token.set(state, token);
+        this.rank.set(state, rank);
+    }
+
+    int getToken(int state) {
+        return token.get(state);
+    }
+
+    int getRank(int state) {
+        return rank.get(state);
+    }
+
+    /**
+     * @return {start, end} of a fragment matching exactly s
+     */
+    int[] literal(String s) {
+        int start = newState();
+        int end = start;
+        for (int i = 0; i < s.length(); i++) {
+            end = edge(end, new int[]{s.charAt(i), s.charAt(i)});
+        }
+        return new int[]{start, end};
+    }
+
+    /**
+     * @return {start, end} of a fragment matching the regex
+     * @throws IllegalArgumentException if the regex is malformed
+     */
+    int[] regex(String regex) {
+        pattern = regex;
+        index = 0;
+        int[] fragment = alternation();
+        if (index < pattern.length()) {
+            throw error("unexpected " + pattern.charAt(index));
+        }
+        return fragment;
+    }
+
+    private int edge(int from, int[] set) {
+        int to = newState();
+        ranges.set(from, set);
+        target.set(from, to);
+        return to;
+    }
+
+    private int[] alternation() {
+        int[] fragment = concatenation();
+        if (!peek('|')) {
+            return fragment;
+        }
+        int start = newState();
+        int end = newState();
+        addEpsilon(start, fragment[0]);
+        addEpsilon(fragment[1], end);
+        while (peek('|')) {
+            index++;
+            fragment = concatenation();
+            addEpsilon(start, fragment[0]);
+            addEpsilon(fragment[1], end);
+        }
+        return new int[]{start, end};
+    }
+
+    private int[] concatenation() {
+        int start = newState();
+        int end = start;
+        while (index < pattern.length() && !peek('|') && !peek(')')) {
+            int[] fragment = repetition();
+            addEpsilon(end, fragment[0]);
+            end = fragment[1];
+        }
+        return new int[]{start, end};
+    }
+
+    private int[] repetition() {
+        int[] fragment = atom();
+        while (peek('*') || peek('+') || peek('?')) {
+            char op = pattern.charAt(index++);
+            int start = newState();
+            int end = newState();
+            addEpsilon(start, fragment[0]);
+            addEpsilon(fragment[1], end);
+            if (op != '+') {
+                addEpsilon(start, end);
+            }
+            if (op != '?') {
+                addEpsilon(fragment[1], fragment[0]);
+            }
+            fragment = new int[]{start, end};
+        }
+        return fragment;
+    }
+
+    private int[] atom() {
+        char c = pattern.charAt(index++);
+        switch (c) {
+            case '(': {
+                int[] fragment = alternation();
+                if (!peek(')')) {
+                    throw error("missing )");
+                }
+                index++;
+                return fragment;
+            }
+            case '[':
+                return set(charClass());
+            case '.':
+                return set(new int[]{0, '\n' - 1, '\n' + 1, MAX});
+            case '\\':
+                return set(escape());
+            case ')':
+            case '*':
+            case '+':
+            case '?':
+                throw error("unexpected " + c);
+            default:
+                return set(new int[]{c, c});
+        }
+    }
+
+    private int[] set(int[] set) {
+        int start = newState();
+        return new int[]{start, edge(start, set)};
+    }
+
+    private int[] charClass() {
+        boolean negated = peek('^');
+        if (negated) {
+            index++;
+        }
+        ArrayList<int[]> parts = new ArrayList<>();
+        do {
+            if (index >= pattern.length()) {
+                throw error("missing ]");
+            }
+            char c = pattern.charAt(index++);
+            if (c == '\\') {
+                parts.add(escape());
+            } else if (index + 1 < pattern.length() && peek('-') && pattern.charAt(index + 1) != ']') {
+                char hi = pattern.charAt(index + 1);
+                if (hi < c) {
+                    throw error("bad range " + c + "-" + hi);
+                }
+                parts.add(new int[]{c, hi});
+                index += 2;
+            } else {
+                parts.add(new int[]{c, c});
+            }
+        } while (!peek(']'));
+        index++;
+        int[] set = union(parts);
+        return negated ? complement(set) : set;
+    }
+
+    private int[] escape() {
+        if (index >= pattern.length()) {
+            throw error("dangling \\");
+        }
+        char c = pattern.charAt(index++);
+        switch (c) {
+            case 'd':
+                return new int[]{'0', '9'};
+            case 'w':
+                return new int[]{'0', '9', 'A', 'Z', '_', '_', 'a', 'z'};
+            case 's':
+                return new int[]{'\t', '\r', ' ', ' '};
+            case 'n':
+                return new int[]{'\n', '\n'};
+            case 't':
+                return new int[]{'\t', '\t'};
+            default:
+                return new int[]{c, c};
+        }
+    }
+
+    private boolean peek(char c) {
+        return index < pattern.length() && pattern.charAt(index) == c;
+    }
+
+    private IllegalArgumentException error(String message) {
+        return new IllegalArgumentException("regex " + pattern + " at " + index + ": " + message);
+    }
+
+    // sorted, disjoint ranges covering the given ones
+    private static int[] union(ArrayList<int[]> parts) {
+        ArrayList<int[]> pairs = new ArrayList<>();
+        for (int[] part : parts) {
+            for (int i = 0; i < part.length; i += 2) {
+                pairs.add(new int[]{part[i], part[i + 1]});
+            }
+        }
+        pairs.sort((a, b) -> Integer.compare(a[0], b[0]));
+        int[] set = new int[pairs.size() * 2];
+        int n = 0;
+        for (int[] pair : pairs) {
+            if (n > 0 && pair[0] <= set[n - 1] + 1) {
+                set[n - 1] = Math.max(set[n - 1], pair[1]);
+            } else {
+                set[n++] = pair[0];
+                set[n++] = pair[1];
+            }
+        }
+        return Arrays.copyOf(set, n);
+    }
+
+    private static int[] complement(int[] set) {
+        int[] result = new int[set.length + 2];
+        int n = 0;
+        int next = 0;
+        for (int i = 0; i < set.length; i += 2) {
+            if (set[i] > next) {
+                result[n++] = next;
+                result[n++] = set[i] - 1;
+            }
+            next = set[i + 1] + 1;
+        }
+        if (next <= MAX) {
+            result[n++] = next;
+            result[n++] = MAX;
+        }
+        return Arrays.copyOf(result, n);
+    }
+}
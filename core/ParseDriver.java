@@ -0,0 +1,368 @@
+package core;
+
+import java.util.Arrays;
+
+/**
+ * Table-driven LR recognizer over terminal ids. The state stack is an int
+ * array kept between calls and only grown when an input needs a deeper
+ * stack, so parsing allocates nothing once the driver has warmed up. A
+ * driver is not thread safe; use one per thread over the same tables.
+ *
+ * Input can be given at once with parse, or pushed: reset, then push tokens
+ * one at a time or in chunks as they arrive, then end. Memory depends only
+ * on the stack depth, never on the length of the input.
+ *
+ * With recovery enabled, a syntax error does not stop the parse. The driver
+ * records the error, pops the stack to the nearest state with a goto on a
+ * variable after which the lookahead is valid, and continues there; tokens
+ * that no such state accepts are skipped. A parse that reached the end this
+ * way finishes as RECOVERED, with every error in getErrorPosition. Default
+ * reductions are not used while recovery is enabled, so an error is found in
+ * the state that has no action on the token.
+ */
+public final class ParseDriver implements Recognizer {
+
+    public static final int RUNNING = 0;
+    public static final int ACCEPTED = 1;
+    public static final int REJECTED = 2;
+    public static final int RECOVERED = 3;
+
+    private final ParseTables tables;
+
+    private final int endMarker;
+
+    private int[] stack = new int[64];
+
+    // tree node of every stack entry, used when a tree is being built
+    private int[] nodes = new int[64];
+
+    private SyntaxTree tree;
+
+    // the tree of the current input, taken from tree at reset
+    private SyntaxTree activeTree;
+
+    private TraceListener trace;
+
+    private int top;
+
+    private int status;
+
+    // number of tokens pushed since reset
+    private long position;
+
+    private boolean recovery;
+
+    // true from an error until the next shift; no new errors are recorded
+    private boolean recovering;
+
+    // position of the last recovery, to skip a token that fails again there
+    private long recoveredAt;
+
+    private long[] errorPositions = new long[8];
+
+    private int[] errorStates = new int[8];
+
+    private int errorCount;
+
+    public ParseDriver(ParseTables tables) {
+        this.tables = tables;
+        this.endMarker = tables.getTerminalCount() - 1;
+    }
+
+    /**
+     * Parses tokens[from..to) followed by the end marker. The tokens are
+     * terminal ids of the grammar, without $.
+     *
+     * @return true if the input is accepted
+     */
+    @Override
+    public boolean parse(int[] tokens, int from, int to) {
+        reset();
+        push(tokens, from, to);
+        return end();
+    }
+
+    /**
+     * Parses the input like parse(tokens, from, to) and builds its syntax
+     * tree into the given tree, which is cleared first.
+     *
+     * @throws IllegalStateException if the tables skip unit reductions
+     */
+    public boolean parse(int[] tokens, int from, int to, SyntaxTree tree) {
+        setTree(tree);
+        try {
+            return parse(tokens, from, to);
+        } finally {
+            this.tree = null;
+        }
+    }
+
+    /**
+     * Builds the syntax tree of the following inputs into tree, or stops
+     * building trees if it is null. Takes effect at the next reset.
+     */
+    public void setTree(SyntaxTree tree) {
+        this.tree = tree;
+    }
+
+    /**
+     * Reports every following action to trace, or stops tracing if it is
+     * null.
+     */
+    public void setTrace(TraceListener trace) {
+        this.trace = trace;
+    }
+
+    /**
+     * Turns panic-mode error recovery on or off for the following inputs.
+     */
+    public void setRecovery(boolean recovery) {
+        this.recovery = recovery;
+    }
+
+    /**
+     * Starts a new input.
+     *
+     * @throws IllegalStateException if a tree is set and the tables skip
+     * unit reductions, which would leave their nodes out of it
+     */
+    public void reset() {
+        if (tree != null && tables.skipsUnitReductions()) {
+            throw new IllegalStateException("syntax trees need tables that keep unit reductions");
+        }
+        activeTree = tree;
+        top = 0;
+        stack[0] = 0;
+        status = RUNNING;
+        position = 0;
+        recovering = false;
+        recoveredAt = -1;
+        errorCount = 0;
+        if (activeTree != null) {
+            activeTree.clear();
+        }
+    }
+
+    /**
+     * Feeds the next terminal id (not $) to the parser.
+     *
+     * @return false once the input is known to be rejected
+     */
+    public boolean push(int token) {
+        if (status != RUNNING) {
+            return false;
+        }
+        if (token < 0 || token >= endMarker) {
+            if (trace != null) {
+                trace.onAction(stack[top], token, (int) position, ParseTables.ERROR, top + 1);
+            }
+            if (!recovery) {
+                status = REJECTED;
+                return false;
+            }
+            addError();
+            position++;
+            return true;
+        }
+        if (!consume(token)) {
+            return false;
+        }
+        position++;
+        return true;
+    }
+
+    /**
+     * Feeds tokens[from..to).
+     *
+     * @return false once the input is known to be rejected
+     */
+    public boolean push(int[] tokens, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (!push(tokens[i])) {
+                return false;
+            }
+        }
+        return status == RUNNING;
+    }
+
+    /**
+     * Ends the input with $.
+     *
+     * @return true if the input is accepted
+     */
+    public boolean end() {
+        if (status == RUNNING) {
+            consume(endMarker);
+        }
+        if (status == ACCEPTED && errorCount > 0) {
+            status = RECOVERED;
+        }
+        return status == ACCEPTED;
+    }
+
+    /**
+     * Performs the reductions the token triggers, then shifts or accepts it.
+     */
+    private boolean consume(int token) {
+        int[] stack = this.stack;
+        SyntaxTree tree = activeTree;
+        int top = this.top;
+        // default reductions would pop states before the error shows, so
+        // recovery only follows the explicit cells
+        boolean exact = recovery;
+        while (true) {
+            int action = exact ? tables.explicitAction(stack[top], token) : tables.action(stack[top], token);
+            if (trace != null) {
+                trace.onAction(stack[top], token, (int) position, action, top + 1);
+            }
+            switch (ParseTables.kind(action)) {
+                case ParseTables.SHIFT:
+                    if (++top == stack.length) {
+                        stack = grow();
+                    }
+                    stack[top] = ParseTables.operand(action);
+                    if (tree != null) {
+                        nodes[top] = tree.addToken(token, (int) position);
+                    }
+                    this.top = top;
+                    recovering = false;
+                    return true;
+                case ParseTables.REDUCE: {
+                    int rule = ParseTables.operand(action);
+                    int length = tables.getRuleLength(rule);
+                    top -= length;
+                    int state = tables.goTo(stack[top], tables.getRuleLeft(rule));
+                    if (++top == stack.length) {
+                        stack = grow();
+                    }
+                    stack[top] = state;
+                    if (tree != null) {
+                        nodes[top] = tree.addRule(rule, nodes, top, length, (int) position);
+                    }
+                    break;
+                }
+                case ParseTables.ACCEPT:
+                    status = ACCEPTED;
+                    if (tree != null) {
+                        tree.setRoot(nodes[top]);
+                    }
+                    this.top = top;
+                    return true;
+                default:
+                    this.top = top;
+                    if (!recovery) {
+                        status = REJECTED;
+                        return false;
+                    }
+                    if (!recovering) {
+                        addError();
+                    }
+                    recovering = true;
+                    if (recoveredAt == position || !recover(token)) {
+                        // skip the token; there is nothing to skip to at the end
+                        if (token == endMarker) {
+                            status = REJECTED;
+                            return false;
+                        }
+                        return true;
+                    }
+                    recoveredAt = position;
+                    stack = this.stack;
+                    top = this.top;
+            }
+        }
+    }
+
+    /**
+     * Pops the stack down to the topmost state with a goto on a variable
+     * after which the token has an action, and pushes the goto state.
+     *
+     * @return false if there is no such state
+     */
+    private boolean recover(int token) {
+        for (int k = top; k >= 0; k--) {
+            for (int v = 0; v < tables.getVariableCount(); v++) {
+                int state = tables.goTo(stack[k], v);
+                if (state != -1 && tables.explicitAction(state, token) != ParseTables.ERROR) {
+                    top = k + 1;
+                    if (top == stack.length) {
+                        grow();
+                    }
+                    stack[top] = state;
+                    if (activeTree != null) {
+                        nodes[top] = activeTree.addError((int) position);
+                    }
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private void addError() {
+        if (errorCount == errorPositions.length) {
+            errorPositions = Arrays.copyOf(errorPositions, errorCount * 2);
+            errorStates = Arrays.copyOf(errorStates, errorCount * 2);
+        }
+        errorPositions[errorCount] = position;
+        errorStates[errorCount] = stack[top];
+        errorCount++;
+    }
+
+    private int[] grow() {
+        stack = Arrays.copyOf(stack, stack.length * 2);
+        nodes = Arrays.copyOf(nodes, stack.length);
+        return stack;
+    }
+
+    /**
+     * @return the number of syntax errors found since reset
+     */
+    public int getErrorCount() {
+        return errorCount;
+    }
+
+    /**
+     * @return the input position of the i-th error
+     */
+    public long getErrorPosition(int i) {
+        return errorPositions[i];
+    }
+
+    /**
+     * @return the state in which the i-th error was found
+     */
+    public int getErrorState(int i) {
+        return errorStates[i];
+    }
+
+    /**
+     * @return RUNNING, ACCEPTED, REJECTED or RECOVERED
+     */
+    public int getStatus() {
+        return status;
+    }
+
+    /**
+     * @return the number of tokens consumed since reset; after a rejection,
+     * the position of the offending token
+     */
+    public long getPosition() {
+        return position;
+    }
+
+    /**
+     * @return the state on top of the stack
+     */
+    public int getState() {
+        return stack[top];
+    }
+
+    public int getDepth() {
+        return top + 1;
+    }
+
+    public ParseTables getTables() {
+        return tables;
+    }
+}
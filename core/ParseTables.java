@@ -0,0 +1,595 @@
+package core;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Immutable LR parse tables packed into int arrays.
+ *
+ * An action is an int code: 0 is an error, otherwise the low two bits hold
+ * the kind (SHIFT, REDUCE or ACCEPT) and the rest the operand (target state
+ * or rule number). Both the action table (state x terminal id) and the goto
+ * table (state x variable index, i.e. variable id - grammar.getStartId())
+ * are stored as comb vectors: row s lives at base[s] in a shared value array
+ * and owns a slot only when check[slot] == s. Action objects are flyweights
+ * shared by all cells with the same code.
+ *
+ * A consistent state, whose only action is one reduction, also gets a
+ * default reduction, which action returns for every terminal without
+ * looking at the comb. In canonical LR and LALR tables such a reduction on
+ * an unexpected token never shifts it, so the error is still found on the
+ * same token, only after the reduction. The rows of consistent states are
+ * left out of the comb; the terminals their reduction was built for are
+ * kept as a bitset per state instead, shared by states with the same set,
+ * so that explicitAction, which error recovery and printed tables use, can
+ * still tell them from errors.
+ *
+ * Tables of a grammar with conflicts keep every action of a conflicting
+ * cell in a separate list, for GLRDriver. The cell itself holds the first
+ * action of the list, a shift before an accept before reductions by lower
+ * rules, which is the action every deterministic driver takes.
+ */
+public final class ParseTables {
+
+    public static final int ERROR = 0;
+    public static final int SHIFT = 1;
+    public static final int REDUCE = 2;
+    public static final int ACCEPT = 3;
+
+    // names of the arrays returned by getArrays
+    static final String[] ARRAYS = {"DEFAULT_REDUCE", "ACTION_BASE", "ACTION_CHECK", "ACTION_VALUE",
+            "GOTO_BASE", "GOTO_CHECK", "GOTO_VALUE", "RULE_LENGTH", "RULE_LEFT", "LOOKAHEAD_ROW",
+            "LOOKAHEAD_BITS"};
+
+    // names of the arrays returned by getConflictArrays
+    static final String[] CONFLICT_ARRAYS = {"CONFLICT_ROW", "CONFLICT_TERMINAL", "CONFLICT_START",
+            "CONFLICT_ACTIONS"};
+
+    private final int stateCount;
+    private final int terminalCount;
+    private final int variableCount;
+
+    // the reduce code of every consistent state, ERROR for the others
+    private final int[] defaultReduce;
+
+    private final int[] actionBase;
+    private final int[] actionCheck;
+    private final int[] actionValue;
+
+    private final int[] gotoBase;
+    private final int[] gotoCheck;
+    private final int[] gotoValue;
+
+    // right side length and left variable index of every rule
+    private final int[] ruleLength;
+    private final int[] ruleLeft;
+
+    // the lookaheads of the default reduction of consistent state s are the
+    // set bits of lookaheadBits[lookaheadRow[s] .. + lookaheadWords)
+    private final int[] lookaheadRow;
+    private final int[] lookaheadBits;
+    private final int lookaheadWords;
+
+    // true for the result of skipUnitReductions
+    private final boolean skipsUnits;
+
+    // conflicting cells of state s are conflictTerminal[conflictRow[s] ..
+    // conflictRow[s + 1]), and cell e has the actions conflictActions[
+    // conflictStart[e] .. conflictStart[e + 1])
+    private final int[] conflictRow;
+    private final int[] conflictTerminal;
+    private final int[] conflictStart;
+    private final int[] conflictActions;
+
+    private final Action[] shiftActions;
+    private final Action[] reduceActions;
+    private final Action acceptAction = new Action(ActionType.ACC, 0);
+
+    private ParseTables(int stateCount, int terminalCount, int variableCount, int[] defaultReduce,
+                        int[][] actionComb, int[][] gotoComb, int[] ruleLength, int[] ruleLeft,
+                        int[][] lookaheads, int[][] conflicts, boolean skipsUnits) {
+        this.stateCount = stateCount;
+        this.terminalCount = terminalCount;
+        this.variableCount = variableCount;
+        this.defaultReduce = defaultReduce;
+        this.actionBase = actionComb[0];
+        this.actionCheck = actionComb[1];
+        this.actionValue = actionComb[2];
+        this.gotoBase = gotoComb[0];
+        this.gotoCheck = gotoComb[1];
+        this.gotoValue = gotoComb[2];
+        this.ruleLength = ruleLength;
+        this.ruleLeft = ruleLeft;
+        this.lookaheadRow = lookaheads[0];
+        this.lookaheadBits = lookaheads[1];
+        this.lookaheadWords = (terminalCount + 31) / 32;
+        this.conflictRow = conflicts[0];
+        this.conflictTerminal = conflicts[1];
+        this.conflictStart = conflicts[2];
+        this.conflictActions = conflicts[3];
+        this.skipsUnits = skipsUnits;
+        shiftActions = new Action[stateCount];
+        for (int s = 0; s < stateCount; s++) {
+            shiftActions[s] = new Action(ActionType.S, s);
+        }
+        reduceActions = new Action[ruleLength.length];
+        for (int r = 0; r < ruleLength.length; r++) {
+            reduceActions[r] = new Action(ActionType.R, r);
+        }
+    }
+
+    /**
+     * Packs dense tables: actions[state][terminal] holds action codes (ERROR
+     * where empty) and gotos[state][variable index] target states (-1 where
+     * empty).
+     */
+    public static ParseTables pack(Grammar grammar, int[][] actions, int[][] gotos) {
+        return pack(grammar, actions, gotos, null);
+    }
+
+    /**
+     * Packs dense tables with conflicts: conflicts[state][terminal], where
+     * the row and the cell are not null, lists every action of the cell,
+     * starting with the one in actions.
+     */
+    public static ParseTables pack(Grammar grammar, int[][] actions, int[][] gotos, int[][][] conflicts) {
+        int[] ruleLength = new int[grammar.getRules().size()];
+        int[] ruleLeft = new int[ruleLength.length];
+        for (int r = 0; r < ruleLength.length; r++) {
+            Rule rule = grammar.getRules().get(r);
+            ruleLength[r] = rule.getRightIds().length;
+            ruleLeft[r] = rule.getLeftId() - grammar.getStartId();
+        }
+        return pack(actions, gotos, grammar.getTerminalCount(), grammar.getVariableCount(), ruleLength, ruleLeft,
+                conflicts, false);
+    }
+
+    private static ParseTables pack(int[][] actions, int[][] gotos, int terminalCount, int variableCount,
+                                    int[] ruleLength, int[] ruleLeft, int[][][] conflicts, boolean skipsUnits) {
+        int[] defaultReduce = new int[actions.length];
+        int[][] rows = new int[actions.length][];
+        for (int s = 0; s < actions.length; s++) {
+            defaultReduce[s] = consistentReduce(actions[s]);
+            rows[s] = defaultReduce[s] == ERROR ? actions[s] : new int[terminalCount];
+        }
+        int[][] gotoCodes = new int[gotos.length][];
+        for (int s = 0; s < gotos.length; s++) {
+            gotoCodes[s] = new int[gotos[s].length];
+            for (int v = 0; v < gotos[s].length; v++) {
+                // stored as target + 1 so that 0 means empty in both tables
+                gotoCodes[s][v] = gotos[s][v] + 1;
+            }
+        }
+        return new ParseTables(actions.length, terminalCount, variableCount, defaultReduce,
+                comb(rows, terminalCount), comb(gotoCodes, variableCount), ruleLength, ruleLeft,
+                packLookaheads(actions, defaultReduce, terminalCount),
+                packConflicts(conflicts, actions.length, terminalCount), skipsUnits);
+    }
+
+    /**
+     * @return LOOKAHEAD_ROW and LOOKAHEAD_BITS of the default reductions,
+     * with -1 as the row of other states
+     */
+    private static int[][] packLookaheads(int[][] actions, int[] defaultReduce, int terminalCount) {
+        int words = (terminalCount + 31) / 32;
+        int[] row = new int[actions.length];
+        int[] bits = new int[0];
+        Map<String, Integer> rows = new HashMap<>();
+        for (int s = 0; s < actions.length; s++) {
+            row[s] = -1;
+            if (defaultReduce[s] == ERROR) {
+                continue;
+            }
+            int[] set = new int[words];
+            for (int t = 0; t < terminalCount; t++) {
+                if (actions[s][t] != ERROR) {
+                    set[t >>> 5] |= 1 << t;
+                }
+            }
+            Integer shared = rows.get(Arrays.toString(set));
+            if (shared == null) {
+                shared = bits.length;
+                rows.put(Arrays.toString(set), shared);
+                bits = Arrays.copyOf(bits, bits.length + words);
+                System.arraycopy(set, 0, bits, shared, words);
+            }
+            row[s] = shared;
+        }
+        return new int[][]{row, bits};
+    }
+
+    /**
+     * @return the CONFLICT_ARRAYS of the lists, all empty but the rows if
+     * conflicts is null
+     */
+    private static int[][] packConflicts(int[][][] conflicts, int stateCount, int terminalCount) {
+        int[] row = new int[stateCount + 1];
+        int cells = 0;
+        int size = 0;
+        for (int s = 0; conflicts != null && s < stateCount; s++) {
+            for (int t = 0; conflicts[s] != null && t < terminalCount; t++) {
+                if (conflicts[s][t] != null) {
+                    cells++;
+                    size += conflicts[s][t].length;
+                }
+            }
+        }
+        int[] terminal = new int[cells];
+        int[] start = new int[cells + 1];
+        int[] codes = new int[size];
+        int e = 0;
+        for (int s = 0; s < stateCount; s++) {
+            row[s] = e;
+            for (int t = 0; conflicts != null && conflicts[s] != null && t < terminalCount; t++) {
+                if (conflicts[s][t] != null) {
+                    terminal[e] = t;
+                    System.arraycopy(conflicts[s][t], 0, codes, start[e], conflicts[s][t].length);
+                    start[e + 1] = start[e] + conflicts[s][t].length;
+                    e++;
+                }
+            }
+        }
+        row[stateCount] = e;
+        return new int[][]{row, terminal, start, codes};
+    }
+
+    /**
+     * Returns tables that skip reductions by unit rules A -> X. A state whose
+     * default reduction is such a rule is entered from p only by a shift or
+     * goto on X, and always goes on to goto(p, A) at once, so these shift and
+     * goto entries are pointed at goto(p, A) directly, following chains of
+     * unit rules. The tables accept the same language, but the skipped
+     * reductions are never performed, so syntax trees and traces need the
+     * original tables; ParseDriver refuses to build trees over the result.
+     * Conflict lists are dropped: the result only has the actions
+     * deterministic drivers take.
+     */
+    public ParseTables skipUnitReductions() {
+        int[][] actions = new int[stateCount][terminalCount];
+        int[][] gotos = new int[stateCount][variableCount];
+        for (int s = 0; s < stateCount; s++) {
+            for (int t = 0; t < terminalCount; t++) {
+                int code = explicitAction(s, t);
+                if (kind(code) == SHIFT) {
+                    code = shift(skipUnits(s, operand(code)));
+                }
+                actions[s][t] = code;
+            }
+            for (int v = 0; v < variableCount; v++) {
+                int target = goTo(s, v);
+                gotos[s][v] = target == -1 ? -1 : skipUnits(s, target);
+            }
+        }
+        return pack(actions, gotos, terminalCount, variableCount, ruleLength, ruleLeft, null, true);
+    }
+
+    /**
+     * @return the state reached from state after target and the unit
+     * reductions it triggers
+     */
+    private int skipUnits(int state, int target) {
+        // a chain longer than the number of states is a cycle of unit rules
+        for (int i = 0; i < stateCount; i++) {
+            int reduce = defaultReduce[target];
+            if (reduce == ERROR || ruleLength[operand(reduce)] != 1) {
+                return target;
+            }
+            int next = goTo(state, ruleLeft[operand(reduce)]);
+            if (next == -1) {
+                return target;
+            }
+            target = next;
+        }
+        return target;
+    }
+
+    /**
+     * @return the reduce code if it is the only action of the row, else ERROR
+     */
+    private static int consistentReduce(int[] row) {
+        int reduce = ERROR;
+        for (int code : row) {
+            if (code == ERROR) {
+                continue;
+            }
+            if (kind(code) != REDUCE || (reduce != ERROR && code != reduce)) {
+                return ERROR;
+            }
+            reduce = code;
+        }
+        return reduce;
+    }
+
+    /**
+     * Row displacement: rows are placed densest first at the lowest base where
+     * none of their non-zero cells collides with a cell already placed.
+     */
+    private static int[][] comb(int[][] rows, int width) {
+        Integer[] order = new Integer[rows.length];
+        int[] filled = new int[rows.length];
+        for (int s = 0; s < rows.length; s++) {
+            order[s] = s;
+            for (int cell : rows[s]) {
+                if (cell != 0) filled[s]++;
+            }
+        }
+        Arrays.sort(order, (a, b) -> filled[b] - filled[a]);
+
+        int[] base = new int[rows.length];
+        int[] check = new int[Math.max(16, width * 2)];
+        int[] value = new int[check.length];
+        Arrays.fill(check, -1);
+        int size = width;
+        int firstFree = 0;
+        for (int s : order) {
+            if (filled[s] == 0) {
+                continue;
+            }
+            int b = Math.max(0, firstFree - firstColumn(rows[s]));
+            while (!fits(rows[s], check, b)) {
+                b++;
+            }
+            if (b + width > check.length) {
+                int old = check.length;
+                int length = Math.max(old * 2, b + width);
+                check = Arrays.copyOf(check, length);
+                value = Arrays.copyOf(value, length);
+                Arrays.fill(check, old, length, -1);
+            }
+            base[s] = b;
+            for (int c = 0; c < width; c++) {
+                if (rows[s][c] != 0) {
+                    check[b + c] = s;
+                    value[b + c] = rows[s][c];
+                }
+            }
+            size = Math.max(size, b + width);
+            while (firstFree < check.length && check[firstFree] != -1) {
+                firstFree++;
+            }
+        }
+        return new int[][]{base, Arrays.copyOf(check, size), Arrays.copyOf(value, size)};
+    }
+
+    private static int firstColumn(int[] row) {
+        for (int c = 0; c < row.length; c++) {
+            if (row[c] != 0) return c;
+        }
+        return 0;
+    }
+
+    private static boolean fits(int[] row, int[] check, int base) {
+        for (int c = 0; c < row.length; c++) {
+            if (row[c] != 0 && base + c < check.length && check[base + c] != -1) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public static int shift(int state) {
+        return state << 2 | SHIFT;
+    }
+
+    public static int reduce(int rule) {
+        return rule << 2 | REDUCE;
+    }
+
+    public static int kind(int code) {
+        return code & 3;
+    }
+
+    public static int operand(int code) {
+        return code >>> 2;
+    }
+
+    /**
+     * @return the ActionType of the code, or null for ERROR
+     */
+    public static ActionType type(int code) {
+        switch (kind(code)) {
+            case SHIFT:
+                return ActionType.S;
+            case REDUCE:
+                return ActionType.R;
+            case ACCEPT:
+                return ActionType.ACC;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * @return the rank of the code in a conflict list, lowest first: a
+     * shift, then accept, then the reductions by rule number
+     */
+    public static int order(int code) {
+        switch (kind(code)) {
+            case SHIFT:
+                return -1;
+            case ACCEPT:
+                return 0;
+            default:
+                return operand(code) + 1;
+        }
+    }
+
+    /**
+     * @return the action code for the terminal id in the state, ERROR if none
+     */
+    public int action(int state, int terminal) {
+        int reduce = defaultReduce[state];
+        if (reduce != ERROR) {
+            return reduce;
+        }
+        int slot = actionBase[state] + terminal;
+        return actionCheck[slot] == state ? actionValue[slot] : ERROR;
+    }
+
+    /**
+     * @return the action code the table builder put in the cell, ERROR if
+     * none; unlike action, a default reduction is only returned for the
+     * terminals it was built for
+     */
+    public int explicitAction(int state, int terminal) {
+        int reduce = defaultReduce[state];
+        if (reduce != ERROR) {
+            int word = lookaheadBits[lookaheadRow[state] + (terminal >>> 5)];
+            return (word & 1 << terminal) != 0 ? reduce : ERROR;
+        }
+        int slot = actionBase[state] + terminal;
+        return actionCheck[slot] == state ? actionValue[slot] : ERROR;
+    }
+
+    /**
+     * @return the index of the conflict list of the cell, -1 if the cell
+     * has at most one action
+     */
+    int conflict(int state, int terminal) {
+        for (int e = conflictRow[state]; e < conflictRow[state + 1]; e++) {
+            if (conflictTerminal[e] == terminal) {
+                return e;
+            }
+        }
+        return -1;
+    }
+
+    boolean hasConflicts(int state) {
+        return conflictRow[state] != conflictRow[state + 1];
+    }
+
+    int getConflictStart(int conflict) {
+        return conflictStart[conflict];
+    }
+
+    int getConflictEnd(int conflict) {
+        return conflictStart[conflict + 1];
+    }
+
+    int getConflictAction(int index) {
+        return conflictActions[index];
+    }
+
+    /**
+     * @return every action code of the cell, empty for an error entry
+     */
+    public int[] actions(int state, int terminal) {
+        int e = conflict(state, terminal);
+        if (e != -1) {
+            return Arrays.copyOfRange(conflictActions, conflictStart[e], conflictStart[e + 1]);
+        }
+        int code = explicitAction(state, terminal);
+        return code == ERROR ? new int[0] : new int[]{code};
+    }
+
+    /**
+     * @return the number of cells with more than one action
+     */
+    public int getConflictCount() {
+        return conflictTerminal.length;
+    }
+
+    /**
+     * @return the goto target for the variable index in the state, -1 if none
+     */
+    public int goTo(int state, int variable) {
+        int slot = gotoBase[state] + variable;
+        return gotoCheck[slot] == state ? gotoValue[slot] - 1 : -1;
+    }
+
+    /**
+     * @return the shared Action for the explicit cell, or null for an error
+     * entry
+     */
+    public Action getAction(int state, int terminal) {
+        int code = explicitAction(state, terminal);
+        switch (kind(code)) {
+            case SHIFT:
+                return shiftActions[operand(code)];
+            case REDUCE:
+                return reduceActions[operand(code)];
+            case ACCEPT:
+                return acceptAction;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * @return the reduce code of a consistent state, ERROR for other states
+     */
+    public int getDefaultReduction(int state) {
+        return defaultReduce[state];
+    }
+
+    public int getRuleLength(int rule) {
+        return ruleLength[rule];
+    }
+
+    public int getRuleLeft(int rule) {
+        return ruleLeft[rule];
+    }
+
+    public int getRuleCount() {
+        return ruleLength.length;
+    }
+
+    public int getStateCount() {
+        return stateCount;
+    }
+
+    public int getTerminalCount() {
+        return terminalCount;
+    }
+
+    public int getVariableCount() {
+        return variableCount;
+    }
+
+    /**
+     * The packed arrays, in the order of ARRAYS, for code that stores or
+     * generates the tables. They are not copies and must not be changed.
+     */
+    int[][] getArrays() {
+        return new int[][]{defaultReduce, actionBase, actionCheck, actionValue,
+                gotoBase, gotoCheck, gotoValue, ruleLength, ruleLeft, lookaheadRow, lookaheadBits};
+    }
+
+    /**
+     * The conflict lists, in the order of CONFLICT_ARRAYS. They are not
+     * copies and must not be changed.
+     */
+    int[][] getConflictArrays() {
+        return new int[][]{conflictRow, conflictTerminal, conflictStart, conflictActions};
+    }
+
+    /**
+     * Rebuilds tables from arrays as returned by getArrays and
+     * getConflictArrays. The arrays are used as they are, not copied.
+     */
+    static ParseTables fromArrays(int stateCount, int terminalCount, int variableCount, int[][] arrays,
+                                  int[][] conflicts, boolean skipsUnits) {
+        return new ParseTables(stateCount, terminalCount, variableCount, arrays[0],
+                new int[][]{arrays[1], arrays[2], arrays[3]}, new int[][]{arrays[4], arrays[5], arrays[6]},
+                arrays[7], arrays[8], new int[][]{arrays[9], arrays[10]}, conflicts, skipsUnits);
+    }
+
+    /**
+     * @return true if these are tables from skipUnitReductions, which
+     * recognize but do not perform every reduction
+     */
+    public boolean skipsUnitReductions() {
+        return skipsUnits;
+    }
+
+    /**
+     * @return the number of ints in the packed action and goto arrays,
+     * with the default reductions and their lookaheads
+     */
+    public int getPackedSize() {
+        return defaultReduce.length + actionBase.length + actionCheck.length + actionValue.length
+                + gotoBase.length + gotoCheck.length + gotoValue.length + lookaheadRow.length
+                + lookaheadBits.length;
+    }
+}
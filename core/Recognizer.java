@@ -0,0 +1,15 @@
+package core;
+
+/**
+ * Decides whether a sequence of terminal ids, without $, is a sentence of
+ * the grammar. Implementations keep state between calls and are not thread
+ * safe.
+ */
+public interface Recognizer {
+
+    boolean parse(int[] tokens, int from, int to);
+
+    default boolean parse(int[] tokens) {
+        return parse(tokens, 0, tokens.length);
+    }
+}
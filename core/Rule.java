@@ -8,6 +8,16 @@ public class Rule {
     protected String leftSide;
     protected String[] rightSide;
 
+    // rule number and symbol ids assigned by the grammar; epsilon rules have
+    // an empty right side
+    protected int index = -1;
+    protected int leftId = -1;
+    protected int[] rightIds;
+
+    // FIRST and nullability of rightIds[i..] for every i, assigned by the grammar
+    protected TerminalSet[] suffixFirst;
+    protected boolean[] suffixNullable;
+
     public Rule(String leftSide, String[] rightSide) {
         this.rightSide = rightSide;
         this.leftSide = leftSide;
@@ -16,6 +26,11 @@ public class Rule {
     public Rule(Rule rule) {
         this.leftSide = rule.getLeftSide();
         this.rightSide = rule.rightSide.clone();
+        this.index = rule.index;
+        this.leftId = rule.leftId;
+        this.rightIds = rule.rightIds;
+        this.suffixFirst = rule.suffixFirst;
+        this.suffixNullable = rule.suffixNullable;
     }
     
     public String getLeftSide() {
@@ -25,6 +40,18 @@ public class Rule {
     public String[] getRightSide() {
         return rightSide;
     }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public int getLeftId() {
+        return leftId;
+    }
+
+    public int[] getRightIds() {
+        return rightIds;
+    }
     
     @Override
     public int hashCode() {
@@ -0,0 +1,172 @@
+package core;
+
+import java.util.Arrays;
+
+/**
+ * A concrete syntax tree stored in flat int arrays instead of one object per
+ * node. Node n is a token leaf (value = terminal id) or a rule node (value =
+ * rule number) whose children are children[childStart[n] ..
+ * childStart[n] + childCount[n]), and it covers the tokens [spanStart[n],
+ * spanEnd[n]) of the input. An ERROR node stands in for whatever error
+ * recovery popped or skipped and has no children. Nodes are numbered in the
+ * order they are built, so children always come before their parent.
+ *
+ * The arrays are kept by clear() and only grown, so one tree can be reused
+ * across parses.
+ */
+public final class SyntaxTree {
+
+    public static final int TOKEN = 0;
+    public static final int RULE = 1;
+    public static final int ERROR = 2;
+
+    private int[] kind = new int[64];
+    private int[] value = new int[64];
+    private int[] childStart = new int[64];
+    private int[] childCount = new int[64];
+    private int[] spanStart = new int[64];
+    private int[] spanEnd = new int[64];
+    private int nodeCount;
+
+    private int[] children = new int[64];
+    private int childrenSize;
+
+    private int root = -1;
+
+    public void clear() {
+        nodeCount = 0;
+        childrenSize = 0;
+        root = -1;
+    }
+
+    int addToken(int terminal, int position) {
+        int node = newNode(TOKEN, terminal);
+        childStart[node] = childrenSize;
+        childCount[node] = 0;
+        spanStart[node] = position;
+        spanEnd[node] = position + 1;
+        return node;
+    }
+
+    int addError(int position) {
+        int node = newNode(ERROR, -1);
+        childStart[node] = childrenSize;
+        childCount[node] = 0;
+        spanStart[node] = position;
+        spanEnd[node] = position;
+        return node;
+    }
+
+    /**
+     * Adds a rule node over the nodes stack[from .. from + length); position
+     * is the span of an empty rule.
+     */
+    int addRule(int rule, int[] stack, int from, int length, int position) {
+        int node = newNode(RULE, rule);
+        if (childrenSize + length > children.length) {
+            children = Arrays.copyOf(children, Math.max(children.length * 2, childrenSize + length));
+        }
+        System.arraycopy(stack, from, children, childrenSize, length);
+        childStart[node] = childrenSize;
+        childCount[node] = length;
+        childrenSize += length;
+        if (length == 0) {
+            spanStart[node] = position;
+            spanEnd[node] = position;
+        } else {
+            spanStart[node] = spanStart[stack[from]];
+            spanEnd[node] = spanEnd[stack[from + length - 1]];
+        }
+        return node;
+    }
+
+    private int newNode(int kind, int value) {
+        if (nodeCount == this.kind.length) {
+            int length = nodeCount * 2;
+            this.kind = Arrays.copyOf(this.kind, length);
+            this.value = Arrays.copyOf(this.value, length);
+            childStart = Arrays.copyOf(childStart, length);
+            childCount = Arrays.copyOf(childCount, length);
+            spanStart = Arrays.copyOf(spanStart, length);
+            spanEnd = Arrays.copyOf(spanEnd, length);
+        }
+        this.kind[nodeCount] = kind;
+        this.value[nodeCount] = value;
+        return nodeCount++;
+    }
+
+    void setRoot(int root) {
+        this.root = root;
+    }
+
+    /**
+     * @return the root node, or -1 if the last parse did not reach the end
+     */
+    public int getRoot() {
+        return root;
+    }
+
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    public int getKind(int node) {
+        return kind[node];
+    }
+
+    /**
+     * @return the terminal id of a TOKEN node, -1 for other nodes
+     */
+    public int getToken(int node) {
+        return kind[node] == TOKEN ? value[node] : -1;
+    }
+
+    /**
+     * @return the rule number of a RULE node, -1 for other nodes
+     */
+    public int getRule(int node) {
+        return kind[node] == RULE ? value[node] : -1;
+    }
+
+    public int getChildCount(int node) {
+        return childCount[node];
+    }
+
+    public int getChild(int node, int index) {
+        return children[childStart[node] + index];
+    }
+
+    public int getSpanStart(int node) {
+        return spanStart[node];
+    }
+
+    public int getSpanEnd(int node) {
+        return spanEnd[node];
+    }
+
+    /**
+     * @return the tree from the root, one node per line, indented by depth
+     */
+    public String toString(Grammar grammar) {
+        StringBuilder sb = new StringBuilder();
+        if (root != -1) {
+            append(sb, grammar, root, 0);
+        }
+        return sb.toString();
+    }
+
+    private void append(StringBuilder sb, Grammar grammar, int node, int depth) {
+        sb.append("  ".repeat(depth));
+        if (kind[node] == TOKEN) {
+            sb.append(grammar.getSymbol(value[node]));
+        } else if (kind[node] == ERROR) {
+            sb.append("error");
+        } else {
+            sb.append(grammar.getRules().get(value[node]).getLeftSide());
+        }
+        sb.append(" [").append(spanStart[node]).append(", ").append(spanEnd[node]).append(")\n");
+        for (int i = 0; i < childCount[node]; i++) {
+            append(sb, grammar, children[childStart[node] + i], depth + 1);
+        }
+    }
+}
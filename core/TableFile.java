@@ -0,0 +1,289 @@
+package core;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Packed parse tables and the symbol names of their grammar stored in a
+ * binary file, so a parser can be started without building the grammar or
+ * the LR automaton again. All numbers are big-endian ints:
+ *
+ * <pre>
+ * MAGIC VERSION stateCount terminalCount variableCount symbolCount flags
+ * length of each array in the order of ParseTables.ARRAYS, then of
+ * ParseTables.CONFLICT_ARRAYS
+ * the arrays, in the same order
+ * symbolCount times: UTF-8 length, UTF-8 bytes of the symbol name
+ * </pre>
+ *
+ * terminalCount counts $, and flags is SKIPS_UNITS for tables from
+ * ParseTables.skipUnitReductions, else 0. A file is read through a memory
+ * map, and each array is filled by one bulk copy from the mapped ints; no
+ * objects are built except the arrays and the symbol names.
+ */
+public final class TableFile {
+
+    public static final int MAGIC = 0x4C525442; // "LRTB"
+
+    public static final int VERSION = 5;
+
+    public static final int SKIPS_UNITS = 1;
+
+    // ints before the first array
+    private static final int HEADER = 7 + ParseTables.ARRAYS.length + ParseTables.CONFLICT_ARRAYS.length;
+
+    private final List<String> symbols;
+
+    private final ParseTables tables;
+
+    private TableFile(List<String> symbols, ParseTables tables) {
+        this.symbols = symbols;
+        this.tables = tables;
+    }
+
+    /**
+     * Writes the tables with the symbol names of grammar, replacing the file.
+     *
+     * @throws IllegalArgumentException if the tables are not built from a
+     * grammar with the same terminals and variables
+     */
+    public static void write(Path file, Grammar grammar, ParseTables tables) throws IOException {
+        if (tables.getTerminalCount() != grammar.getEndMarkerId() + 1
+                || tables.getVariableCount() != grammar.getSymbolCount() - grammar.getStartId()) {
+            throw new IllegalArgumentException("tables do not match the grammar");
+        }
+        int[][] arrays = concat(tables.getArrays(), tables.getConflictArrays());
+        byte[][] names = new byte[grammar.getSymbolCount()][];
+        long size = 4L * HEADER;
+        for (int[] array : arrays) {
+            size += 4L * array.length;
+        }
+        for (int id = 0; id < names.length; id++) {
+            names[id] = grammar.getSymbol(id).getBytes(StandardCharsets.UTF_8);
+            size += 4 + names[id].length;
+        }
+        if (size > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("tables too large: " + size + " bytes");
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate((int) size);
+        buffer.putInt(MAGIC).putInt(VERSION).putInt(tables.getStateCount()).putInt(tables.getTerminalCount())
+                .putInt(tables.getVariableCount()).putInt(names.length)
+                .putInt(tables.skipsUnitReductions() ? SKIPS_UNITS : 0);
+        for (int[] array : arrays) {
+            buffer.putInt(array.length);
+        }
+        IntBuffer ints = buffer.asIntBuffer();
+        for (int[] array : arrays) {
+            ints.put(array);
+        }
+        buffer.position(buffer.position() + 4 * ints.position());
+        for (byte[] name : names) {
+            buffer.putInt(name.length).put(name);
+        }
+        buffer.flip();
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+    }
+
+    /**
+     * @throws IOException if the file cannot be read, is not a table file,
+     * has another version, or is truncated or otherwise corrupt: array
+     * lengths must match the counts in the header and the file size, and
+     * every offset and code must stay inside the arrays it refers to
+     */
+    public static TableFile read(Path file) throws IOException {
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException(file + ": not a table file");
+            }
+            // the mapping stays valid after the channel is closed
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        try {
+            IntBuffer ints = buffer.asIntBuffer();
+            if (ints.limit() < HEADER || ints.get(0) != MAGIC) {
+                throw new IOException(file + ": not a table file");
+            }
+            if (ints.get(1) != VERSION) {
+                throw new IOException(file + ": unsupported table file version " + ints.get(1));
+            }
+            int stateCount = ints.get(2);
+            int terminalCount = ints.get(3);
+            int variableCount = ints.get(4);
+            int symbolCount = ints.get(5);
+            int flags = ints.get(6);
+
+            int[] lengths = new int[ParseTables.ARRAYS.length + ParseTables.CONFLICT_ARRAYS.length];
+            // every name takes at least its length
+            long size = 4L * HEADER + 4L * symbolCount;
+            for (int i = 0; i < lengths.length; i++) {
+                lengths[i] = ints.get(7 + i);
+                size += 4L * lengths[i];
+            }
+            if (stateCount < 1 || terminalCount < 1 || variableCount < 1
+                    || symbolCount != terminalCount + 1L + variableCount || size > buffer.limit()
+                    || !validLengths(lengths, stateCount, terminalCount, variableCount)) {
+                throw new IOException(file + ": corrupt table file");
+            }
+
+            String[] names = new String[symbolCount];
+            int[][] arrays = new int[lengths.length][];
+            ints.position(HEADER);
+            for (int i = 0; i < arrays.length; i++) {
+                arrays[i] = new int[lengths[i]];
+                ints.get(arrays[i]);
+            }
+            buffer.position(4 * ints.position());
+            for (int id = 0; id < names.length; id++) {
+                int length = buffer.getInt();
+                if (length < 0 || length > buffer.remaining()) {
+                    throw new IOException(file + ": corrupt table file");
+                }
+                byte[] name = new byte[length];
+                buffer.get(name);
+                names[id] = new String(name, StandardCharsets.UTF_8);
+            }
+            if (buffer.hasRemaining() || !validContents(arrays, stateCount, terminalCount, variableCount)) {
+                throw new IOException(file + ": corrupt table file");
+            }
+            return new TableFile(List.of(names),
+                    ParseTables.fromArrays(stateCount, terminalCount, variableCount,
+                            Arrays.copyOf(arrays, ParseTables.ARRAYS.length),
+                            Arrays.copyOfRange(arrays, ParseTables.ARRAYS.length, arrays.length),
+                            (flags & SKIPS_UNITS) != 0));
+        } catch (RuntimeException e) {
+            // a count or length reaching past the end of the file
+            throw new IOException(file + ": corrupt table file", e);
+        }
+    }
+
+    /**
+     * @param lengths the lengths of ParseTables.ARRAYS, then of
+     * ParseTables.CONFLICT_ARRAYS
+     */
+    private static boolean validLengths(int[] lengths, int stateCount, int terminalCount, int variableCount) {
+        for (int length : lengths) {
+            if (length < 0) {
+                return false;
+            }
+        }
+        // DEFAULT_REDUCE, ACTION_BASE, GOTO_BASE, LOOKAHEAD_ROW and
+        // CONFLICT_ROW have a cell per state; a comb is at least as wide as
+        // its rows; the conflict cells have one start more
+        return lengths[0] == stateCount && lengths[1] == stateCount && lengths[4] == stateCount
+                && lengths[9] == stateCount && lengths[11] == stateCount + 1
+                && lengths[2] >= terminalCount && lengths[3] == lengths[2]
+                && lengths[5] >= variableCount && lengths[6] == lengths[5]
+                && lengths[7] >= 1 && lengths[8] == lengths[7]
+                && lengths[10] % ((terminalCount + 31) / 32) == 0
+                && lengths[13] == lengths[12] + 1;
+    }
+
+    /**
+     * @return true if every base, row and start indexes inside its array,
+     * every action names an existing state or rule, and every goto and rule
+     * an existing state or variable
+     */
+    private static boolean validContents(int[][] arrays, int stateCount, int terminalCount, int variableCount) {
+        int[] ruleLength = arrays[7];
+        int[] ruleLeft = arrays[8];
+        int words = (terminalCount + 31) / 32;
+        for (int s = 0; s < stateCount; s++) {
+            if (arrays[1][s] < 0 || arrays[1][s] > arrays[2].length - terminalCount
+                    || arrays[4][s] < 0 || arrays[4][s] > arrays[5].length - variableCount
+                    || (arrays[0][s] != ParseTables.ERROR && (arrays[9][s] < 0
+                    || arrays[9][s] > arrays[10].length - words))) {
+                return false;
+            }
+        }
+        for (int r = 0; r < ruleLength.length; r++) {
+            if (ruleLength[r] < 0 || ruleLeft[r] < 0 || ruleLeft[r] >= variableCount) {
+                return false;
+            }
+        }
+        for (int target : arrays[6]) {
+            if (target < 0 || target > stateCount) {
+                return false;
+            }
+        }
+        int[] conflictRow = arrays[11];
+        int[] conflictStart = arrays[13];
+        if (conflictRow[0] != 0 || conflictRow[stateCount] != arrays[12].length
+                || conflictStart[0] != 0 || conflictStart[conflictStart.length - 1] != arrays[14].length) {
+            return false;
+        }
+        for (int s = 0; s < stateCount; s++) {
+            if (conflictRow[s] > conflictRow[s + 1]) {
+                return false;
+            }
+        }
+        for (int e = 0; e < arrays[12].length; e++) {
+            if (conflictStart[e] > conflictStart[e + 1] || arrays[12][e] < 0 || arrays[12][e] >= terminalCount) {
+                return false;
+            }
+        }
+        return validCodes(arrays[0], stateCount, ruleLength.length)
+                && validCodes(arrays[3], stateCount, ruleLength.length)
+                && validCodes(arrays[14], stateCount, ruleLength.length);
+    }
+
+    private static boolean validCodes(int[] codes, int stateCount, int ruleCount) {
+        for (int code : codes) {
+            int kind = ParseTables.kind(code);
+            int operand = ParseTables.operand(code);
+            if ((kind == ParseTables.SHIFT && operand >= stateCount)
+                    || (kind == ParseTables.REDUCE && operand >= ruleCount)
+                    || (kind != ParseTables.SHIFT && kind != ParseTables.REDUCE && operand != 0)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int[][] concat(int[][] a, int[][] b) {
+        int[][] result = Arrays.copyOf(a, a.length + b.length);
+        System.arraycopy(b, 0, result, a.length, b.length);
+        return result;
+    }
+
+    public ParseTables getTables() {
+        return tables;
+    }
+
+    /**
+     * @return the name of every symbol id of the grammar, including $,
+     * epsilon and S'
+     */
+    public List<String> getSymbols() {
+        return symbols;
+    }
+
+    /**
+     * @return the names of the terminal ids, without $
+     */
+    public List<String> getTerminals() {
+        return symbols.subList(0, tables.getTerminalCount() - 1);
+    }
+
+    /**
+     * @param bytecode see CompiledParser(Grammar, ParseTables, boolean)
+     */
+    public CompiledParser newParser(boolean bytecode) {
+        return new CompiledParser(getTerminals(), tables, bytecode);
+    }
+}
@@ -0,0 +1,123 @@
+package core;
+
+import java.util.Arrays;
+
+/**
+ * A set of terminal ids stored as a bitset, used for FIRST sets and LR(1)
+ * lookaheads. All sets of one grammar have the same capacity,
+ * grammar.getTerminalCount(), so union and subset tests are a few word
+ * operations.
+ */
+public class TerminalSet {
+
+    private final long[] words;
+
+    public TerminalSet(int capacity) {
+        words = new long[(capacity + 63) >>> 6];
+    }
+
+    public TerminalSet(TerminalSet set) {
+        words = set.words.clone();
+    }
+
+    public void add(int terminal) {
+        words[terminal >>> 6] |= 1L << terminal;
+    }
+
+    public boolean contains(int terminal) {
+        int word = terminal >>> 6;
+        return word < words.length && (words[word] & (1L << terminal)) != 0;
+    }
+
+    /**
+     * @return true if this set changed
+     */
+    public boolean addAll(TerminalSet set) {
+        long changed = 0;
+        for (int i = 0; i < words.length; i++) {
+            long merged = words[i] | set.words[i];
+            changed |= merged ^ words[i];
+            words[i] = merged;
+        }
+        return changed != 0;
+    }
+
+    public boolean containsAll(TerminalSet set) {
+        for (int i = 0; i < words.length; i++) {
+            if ((set.words[i] & ~words[i]) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public void clear() {
+        Arrays.fill(words, 0);
+    }
+
+    public boolean isEmpty() {
+        for (long word : words) {
+            if (word != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public int size() {
+        int size = 0;
+        for (long word : words) {
+            size += Long.bitCount(word);
+        }
+        return size;
+    }
+
+    /**
+     * @return the first terminal >= from in the set, or -1; iterate with
+     * for (int t = set.next(0); t >= 0; t = set.next(t + 1))
+     */
+    public int next(int from) {
+        int i = from >>> 6;
+        if (i >= words.length) {
+            return -1;
+        }
+        long word = words[i] & (-1L << from);
+        while (true) {
+            if (word != 0) {
+                return (i << 6) + Long.numberOfTrailingZeros(word);
+            }
+            if (++i == words.length) {
+                return -1;
+            }
+            word = words[i];
+        }
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(words);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (obj == null || getClass() != obj.getClass()) {
+            return false;
+        }
+        return Arrays.equals(words, ((TerminalSet) obj).words);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder str = new StringBuilder("[");
+        for (int t = next(0); t >= 0; t = next(t + 1)) {
+            if (str.length() > 1) {
+                str.append(", ");
+            }
+            str.append(t);
+        }
+        return str.append("]").toString();
+    }
+}
@@ -0,0 +1,215 @@
+package core;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A TraceListener keeping the last N parse actions in fixed-size int arrays,
+ * so tracing costs a few stores per action and never allocates. Text is only
+ * built by render, by replaying the recorded actions.
+ */
+public final class TraceBuffer implements TraceListener {
+
+    public static final int DEFAULT_CAPACITY = 4096;
+
+    private static final int COLUMN = 40;
+
+    private final int[] states;
+    private final int[] tokens;
+    private final int[] positions;
+    private final int[] actions;
+    private final int[] depths;
+
+    // total number of actions recorded since clear
+    private long count;
+
+    public TraceBuffer(int capacity) {
+        states = new int[capacity];
+        tokens = new int[capacity];
+        positions = new int[capacity];
+        actions = new int[capacity];
+        depths = new int[capacity];
+    }
+
+    @Override
+    public void onAction(int state, int token, int position, int action, int depth) {
+        int i = (int) (count++ % states.length);
+        states[i] = state;
+        tokens[i] = token;
+        positions[i] = position;
+        actions[i] = action;
+        depths[i] = depth;
+    }
+
+    public void clear() {
+        count = 0;
+    }
+
+    /**
+     * @return the number of recorded actions still in the buffer
+     */
+    public int size() {
+        return (int) Math.min(count, states.length);
+    }
+
+    /**
+     * @return the number of actions recorded since clear, including those
+     * that were overwritten
+     */
+    public long getCount() {
+        return count;
+    }
+
+    // i-th action still in the buffer, oldest first
+    private int slot(int i) {
+        return (int) ((count - size() + i) % states.length);
+    }
+
+    public int getState(int i) {
+        return states[slot(i)];
+    }
+
+    public int getToken(int i) {
+        return tokens[slot(i)];
+    }
+
+    public int getPosition(int i) {
+        return positions[slot(i)];
+    }
+
+    public int getAction(int i) {
+        return actions[slot(i)];
+    }
+
+    public int getDepth(int i) {
+        return depths[slot(i)];
+    }
+
+    /**
+     * Renders the buffered actions as Stack / Input / Action rows. input
+     * holds the token names of the parsed input without $. The stack is
+     * rebuilt by replaying the actions; entries pushed before the oldest
+     * buffered action are shown as ?. Long stacks and inputs are cut to the
+     * column width, so every row has a bounded length.
+     */
+    public String render(Grammar grammar, List<String> input) {
+        StringBuilder sb = new StringBuilder();
+        pad(sb, "Stack");
+        pad(sb, "Input");
+        sb.append("Action\n");
+        sb.append("-".repeat(100)).append("\n");
+        if (count > size()) {
+            sb.append("... ").append(count - size()).append(" earlier actions\n");
+        }
+
+        int n = size();
+        // replayed stack of symbol names and states; null when unknown
+        String[] symbols = new String[16];
+        int[] stateStack = new int[16];
+        int top = -1;
+        for (int i = 0; i < n; i++) {
+            int depth = getDepth(i);
+            if (i == 0) {
+                top = depth - 1;
+                if (top >= stateStack.length) {
+                    symbols = new String[top * 2];
+                    stateStack = new int[top * 2];
+                }
+                // the bottom of the stack is always the start state
+                stateStack[0] = 0;
+                for (int k = 1; k < top; k++) {
+                    stateStack[k] = -1;
+                }
+            }
+            stateStack[top] = getState(i);
+
+            StringBuilder cell = new StringBuilder();
+            for (int k = top; k >= 0 && cell.length() < COLUMN; k--) {
+                String entry = (stateStack[k] == -1 ? "?" : Integer.toString(stateStack[k]));
+                if (k > 0) {
+                    entry = (symbols[k] == null ? "?" : symbols[k]) + " " + entry;
+                }
+                cell.insert(0, k == top ? entry : entry + " ");
+            }
+            pad(sb, cutLeft(cell));
+
+            cell.setLength(0);
+            int position = getPosition(i);
+            for (int k = position; k <= input.size() && cell.length() < COLUMN; k++) {
+                cell.append(k == position ? "" : " ").append(k < input.size() ? input.get(k) : Grammar.END_MARKER);
+            }
+            pad(sb, cutRight(cell));
+
+            int action = getAction(i);
+            switch (ParseTables.kind(action)) {
+                case ParseTables.SHIFT:
+                    sb.append("S").append(ParseTables.operand(action));
+                    if (++top == stateStack.length) {
+                        symbols = Arrays.copyOf(symbols, top * 2);
+                        stateStack = Arrays.copyOf(stateStack, top * 2);
+                    }
+                    symbols[top] = position < input.size() ? input.get(position) : grammar.getSymbol(getToken(i));
+                    stateStack[top] = ParseTables.operand(action);
+                    break;
+                case ParseTables.REDUCE: {
+                    Rule rule = grammar.getRules().get(ParseTables.operand(action));
+                    sb.append("R").append(ParseTables.operand(action));
+                    top -= rule.getRightIds().length - 1;
+                    if (top == stateStack.length) {
+                        symbols = Arrays.copyOf(symbols, top * 2);
+                        stateStack = Arrays.copyOf(stateStack, top * 2);
+                    }
+                    symbols[top] = rule.getLeftSide();
+                    // the goto state is the state of the next action
+                    stateStack[top] = i + 1 < n ? getState(i + 1) : -1;
+                    break;
+                }
+                case ParseTables.ACCEPT:
+                    sb.append("ACC");
+                    break;
+                default:
+                    sb.append("error");
+                    // with recovery the parse goes on from the stack of the next action
+                    if (i + 1 < n && (getDepth(i + 1) - 1 != top || getState(i + 1) != stateStack[top])) {
+                        top = getDepth(i + 1) - 1;
+                        if (top >= stateStack.length) {
+                            symbols = Arrays.copyOf(symbols, top * 2);
+                            stateStack = Arrays.copyOf(stateStack, top * 2);
+                        }
+                        symbols[top] = null;
+                    }
+            }
+            sb.append("\n");
+        }
+        return sb.toString();
+    }
+
+    public String render(Grammar grammar, int[] input) {
+        String[] names = new String[input.length];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = grammar.isTerminal(input[i]) ? grammar.getSymbol(input[i]) : "?";
+        }
+        return render(grammar, List.of(names));
+    }
+
+    private static void pad(StringBuilder sb, CharSequence cell) {
+        sb.append(cell);
+        for (int i = cell.length(); i < COLUMN; i++) {
+            sb.append(' ');
+        }
+    }
+
+    private static CharSequence cutLeft(StringBuilder cell) {
+        if (cell.length() < COLUMN) {
+            return cell;
+        }
+        return "..." + cell.substring(cell.length() - COLUMN + 5);
+    }
+
+    private static CharSequence cutRight(StringBuilder cell) {
+        if (cell.length() < COLUMN) {
+            return cell;
+        }
+        return cell.substring(0, COLUMN - 5) + "...";
+    }
+}
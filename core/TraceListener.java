@@ -0,0 +1,17 @@
+package core;
+
+/**
+ * Receives every action a ParseDriver takes, before it is applied.
+ */
+public interface TraceListener {
+
+    /**
+     * @param state the state on top of the stack
+     * @param token the lookahead terminal id, or an invalid id as pushed
+     * @param position the index of the lookahead in the input
+     * @param action the ParseTables action code, ERROR when the input is
+     * rejected
+     * @param depth the number of states on the stack
+     */
+    void onAction(int state, int token, int position, int action, int depth);
+}
@@ -0,0 +1,94 @@
+package LARA;
+
+import core.GLRDriver;
+import core.Grammar;
+import core.ParseDriver;
+import core.ParseTables;
+import core.Recognizer;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+/**
+ * Checks the hits and misses of both tiers of ParserCache, and that tables
+ * of grammars with conflicts are cached too.
+ */
+public final class ParserCacheTest {
+
+    private static final String EXPRESSION = "E -> E + T | T\nT -> T * F | F\nF -> ( E ) | id";
+
+    private static final String AMBIGUOUS = "E -> E + E | E * E | ( E ) | id";
+
+    public static void main(String[] args) throws IOException {
+        Path directory = Files.createTempDirectory("tables");
+        try {
+            Grammar expression = new Grammar(EXPRESSION);
+            Grammar ambiguous = new Grammar(AMBIGUOUS);
+
+            ParserCache cache = new ParserCache(1, directory);
+            ParseTables tables = cache.getTables(expression, ParserCache.Mode.LALR1);
+            counts(cache, 0, 0, 1);
+            check(cache.getTables(expression, ParserCache.Mode.LALR1) == tables, "memory hit built new tables");
+            counts(cache, 1, 0, 1);
+            cache.getTables(expression, ParserCache.Mode.CLR1);
+            counts(cache, 1, 0, 2);
+
+            ParseTables conflicts = cache.getTables(ambiguous, ParserCache.Mode.LALR1);
+            check(conflicts != null && conflicts.getConflictCount() > 0, "conflicts not kept");
+            counts(cache, 1, 0, 3);
+            check(cache.getConflictCount(ambiguous, ParserCache.Mode.LALR1) == conflicts.getConflictCount(),
+                    "conflict count differs");
+            check(cache.getParser(ambiguous, ParserCache.Mode.LALR1) == null, "deterministic parser for conflicts");
+            Recognizer glr = cache.getRecognizer(ambiguous, ParserCache.Mode.LALR1);
+            check(glr instanceof GLRDriver, "no GLRDriver for conflicts");
+            counts(cache, 4, 0, 3);
+            int id = ambiguous.getSymbolId("id");
+            int plus = ambiguous.getSymbolId("+");
+            int times = ambiguous.getSymbolId("*");
+            check(glr.parse(new int[]{id, plus, id, times, id}), "id + id * id rejected");
+
+            // the capacity of one pushed the expression grammar out of memory
+            check(cache.getRecognizer(expression, ParserCache.Mode.LALR1) instanceof ParseDriver,
+                    "no ParseDriver without conflicts");
+            counts(cache, 4, 1, 3);
+
+            ParserCache other = new ParserCache(4, directory);
+            ParseTables loaded = other.getTables(ambiguous, ParserCache.Mode.LALR1);
+            check(loaded.getConflictCount() == conflicts.getConflictCount(), "conflicts lost in the table file");
+            other.getTables(expression, ParserCache.Mode.CLR1);
+            counts(other, 0, 2, 0);
+            check(other.getParser(expression, ParserCache.Mode.CLR1) != null, "no parser without conflicts");
+            counts(other, 1, 2, 0);
+
+            // a damaged file is built again and replaced
+            Path file = directory.resolve(ParserCache.fingerprint(ambiguous, ParserCache.Mode.LALR1) + ".lrt");
+            byte[] bytes = Files.readAllBytes(file);
+            Files.write(file, Arrays.copyOf(bytes, bytes.length - 8));
+            ParserCache third = new ParserCache(4, directory);
+            check(third.getTables(ambiguous, ParserCache.Mode.LALR1).getConflictCount()
+                    == conflicts.getConflictCount(), "conflicts lost in the rebuilt tables");
+            counts(third, 0, 0, 1);
+            check(Files.size(file) == bytes.length, "damaged file not replaced");
+        } finally {
+            try (Stream<Path> files = Files.walk(directory)) {
+                files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+            }
+        }
+        System.out.println("ParserCacheTest: ok");
+    }
+
+    private static void counts(ParserCache cache, long memoryHits, long diskHits, long misses) {
+        check(cache.getMemoryHits() == memoryHits && cache.getDiskHits() == diskHits && cache.getMisses() == misses,
+                "memory hits " + cache.getMemoryHits() + ", disk hits " + cache.getDiskHits() + ", misses "
+                        + cache.getMisses() + ", expected " + memoryHits + ", " + diskHits + ", " + misses);
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new AssertionError(message);
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package core;
+
+import LARA.LR1Parser;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Checks that compiled recognizers agree with ParseDriver, that the states
+ * of a language grammar are split into methods HotSpot compiles, and that a
+ * state too large for short branches still compiles. With the argument
+ * bench, also compares their throughput on a long program.
+ */
+public final class BytecodeCompilerTest {
+
+    static final String LANGUAGE = String.join("\n",
+            "Prog -> Decls",
+            "Decls -> Decls Decl | Decl",
+            "Decl -> Type id ; | Type id ( Params ) Block",
+            "Type -> int | bool | void",
+            "Params -> ParamList | epsilon",
+            "ParamList -> ParamList , Param | Param",
+            "Param -> Type id",
+            "Block -> { Stmts }",
+            "Stmts -> Stmts Stmt | epsilon",
+            "Stmt -> Block | Type id ; | id = Expr ; | if ( Expr ) Block | if ( Expr ) Block else Block"
+                    + " | while ( Expr ) Stmt | return Expr ; | Expr ;",
+            "Expr -> Expr or And | And",
+            "And -> And and Cmp | Cmp",
+            "Cmp -> Sum < Sum | Sum == Sum | Sum",
+            "Sum -> Sum + Term | Sum - Term | Term",
+            "Term -> Term * Unary | Term / Unary | Unary",
+            "Unary -> ! Unary | - Unary | Primary",
+            "Primary -> id | num | ( Expr ) | id ( Args )",
+            "Args -> ArgList | epsilon",
+            "ArgList -> ArgList , Expr | Expr");
+
+    static final String FUNCTION = "int id ( int id , bool id ) { int id ; id = id * ( id + num ) - id ( id , num ) ; "
+            + "if ( id < id and ! id ) { return id ; } else { while ( id == num ) id = id - num ; } "
+            + "return id / num ; }";
+
+    public static void main(String[] args) {
+        Grammar grammar = new Grammar(LANGUAGE);
+        LR1Parser clr = new LR1Parser(grammar);
+        GLRDriverTest.check(clr.parseCLR1(), "language grammar is not LR(1)");
+        LR1Parser lalr = new LR1Parser(grammar);
+        GLRDriverTest.check(lalr.parseLALR1(), "language grammar is not LALR(1)");
+        int[] program = program(grammar, 200);
+
+        for (ParseTables tables : new ParseTables[]{lalr.getTables(), clr.getTables(),
+                clr.getTables().skipUnitReductions()}) {
+            BytecodeCompiler compiler = new BytecodeCompiler(tables);
+            GLRDriverTest.check(compiler.getLargestMethod() <= BytecodeCompiler.METHOD_LIMIT,
+                    "method of " + compiler.getLargestMethod() + " bytes for " + tables.getStateCount() + " states");
+            compare(tables, compiler.newRecognizer(), program, grammar.getEndMarkerId());
+            System.out.println(tables.getStateCount() + " states in " + compiler.getChunkCount()
+                    + " methods, largest " + compiler.getLargestMethod() + " bytes");
+        }
+
+        // one state with thousands of shifts needs more than the 32 KB of
+        // short branches
+        int width = 3000;
+        StringBuilder wide = new StringBuilder("S -> t0 x");
+        for (int i = 1; i < width; i++) {
+            wide.append(" | t").append(i).append(" x");
+        }
+        Grammar wideGrammar = new Grammar(wide.toString());
+        LR1Parser wideParser = new LR1Parser(wideGrammar);
+        wideParser.parseLALR1();
+        BytecodeCompiler compiler = new BytecodeCompiler(wideParser.getTables());
+        GLRDriverTest.check(compiler.getLargestMethod() > Short.MAX_VALUE, "state 0 fits short branches");
+        Recognizer recognizer = compiler.newRecognizer();
+        int x = wideGrammar.getSymbolId("x");
+        for (int i = 0; i < width; i += 7) {
+            int t = wideGrammar.getSymbolId("t" + i);
+            GLRDriverTest.check(recognizer.parse(new int[]{t, x}), "t" + i + " x rejected");
+            GLRDriverTest.check(!recognizer.parse(new int[]{t, t}), "t" + i + " t" + i + " accepted");
+        }
+
+        if (args.length > 0 && args[0].equals("bench")) {
+            bench(lalr.getTables(), program(grammar, 20000));
+        }
+        System.out.println("BytecodeCompilerTest: ok");
+    }
+
+    static int[] program(Grammar grammar, int functions) {
+        String[] words = FUNCTION.split(" ");
+        int[] tokens = new int[words.length * functions];
+        for (int i = 0; i < tokens.length; i++) {
+            tokens[i] = grammar.getSymbolId(words[i % words.length]);
+        }
+        return tokens;
+    }
+
+    /**
+     * The program, and copies of short prefixes of it with random tokens
+     * replaced, inserted or dropped, must get the same answer from both.
+     */
+    private static void compare(ParseTables tables, Recognizer compiled, int[] program, int terminals) {
+        ParseDriver driver = new ParseDriver(tables);
+        GLRDriverTest.check(compiled.parse(program) && driver.parse(program), "program rejected");
+        Random random = new Random(1);
+        for (int i = 0; i < 20000; i++) {
+            List<Integer> tokens = new ArrayList<>();
+            int length = random.nextInt(120);
+            for (int k = 0; k < length; k++) {
+                tokens.add(program[k]);
+            }
+            for (int edits = random.nextInt(3); edits > 0 && !tokens.isEmpty(); edits--) {
+                int at = random.nextInt(tokens.size());
+                switch (random.nextInt(3)) {
+                    case 0:
+                        tokens.set(at, random.nextInt(terminals));
+                        break;
+                    case 1:
+                        tokens.add(at, random.nextInt(terminals));
+                        break;
+                    default:
+                        tokens.remove(at);
+                }
+            }
+            int[] input = tokens.stream().mapToInt(Integer::intValue).toArray();
+            GLRDriverTest.check(compiled.parse(input) == driver.parse(input),
+                    "bytecode and table driver disagree on " + Arrays.toString(input));
+        }
+    }
+
+    private static void bench(ParseTables tables, int[] program) {
+        Recognizer driver = new ParseDriver(tables);
+        Recognizer compiled = new BytecodeCompiler(tables).newRecognizer();
+        for (int round = 0; round < 8; round++) {
+            long start = System.nanoTime();
+            driver.parse(program);
+            long middle = System.nanoTime();
+            compiled.parse(program);
+            long end = System.nanoTime();
+            System.out.printf("table %.1f Mtok/s, bytecode %.1f Mtok/s%n", program.length * 1e3 / (middle - start),
+                    program.length * 1e3 / (end - middle));
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package core;
+
+import java.util.Random;
+
+/**
+ * Compares Digraph.traverse with a search from every node on random
+ * relations, and runs it over a chain too long for a recursive walk.
+ */
+public final class DigraphTest {
+
+    public static void main(String[] args) {
+        Random random = new Random(10);
+        for (int round = 0; round < 500; round++) {
+            int n = 1 + random.nextInt(40);
+            int[][] edges = new int[n][];
+            TerminalSet[] sets = new TerminalSet[n];
+            for (int x = 0; x < n; x++) {
+                edges[x] = new int[random.nextInt(4)];
+                for (int i = 0; i < edges[x].length; i++) {
+                    edges[x][i] = random.nextInt(n);
+                }
+                sets[x] = new TerminalSet(n);
+                if (random.nextInt(3) == 0) {
+                    sets[x].add(x);
+                }
+            }
+            TerminalSet[] expected = new TerminalSet[n];
+            for (int x = 0; x < n; x++) {
+                expected[x] = reachable(edges, sets, x);
+            }
+            Digraph.traverse(edges, sets);
+            for (int x = 0; x < n; x++) {
+                GLRDriverTest.check(sets[x].equals(expected[x]), "node " + x + ": " + sets[x] + ", expected "
+                        + expected[x]);
+            }
+        }
+
+        // a cycle through every node of a chain
+        int n = 200000;
+        int[][] edges = new int[n][];
+        TerminalSet[] sets = new TerminalSet[n];
+        for (int x = 0; x < n; x++) {
+            edges[x] = new int[]{(x + 1) % n};
+            sets[x] = new TerminalSet(4);
+        }
+        sets[n - 1].add(3);
+        Digraph.traverse(edges, sets);
+        for (int x = 0; x < n; x++) {
+            GLRDriverTest.check(sets[x].contains(3), "node " + x + " of the cycle misses 3");
+        }
+        System.out.println("DigraphTest: ok");
+    }
+
+    private static TerminalSet reachable(int[][] edges, TerminalSet[] sets, int from) {
+        TerminalSet result = new TerminalSet(edges.length);
+        boolean[] seen = new boolean[edges.length];
+        int[] worklist = new int[edges.length];
+        int size = 0;
+        worklist[size++] = from;
+        seen[from] = true;
+        for (int i = 0; i < size; i++) {
+            result.addAll(sets[worklist[i]]);
+            for (int y : edges[worklist[i]]) {
+                if (!seen[y]) {
+                    seen[y] = true;
+                    worklist[size++] = y;
+                }
+            }
+        }
+        return result;
+    }
+}
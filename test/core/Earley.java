@@ -0,0 +1,82 @@
+package core;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+/**
+ * Earley recognizer used as the reference for the table-driven parsers in
+ * the tests. Items are (rule, dot, origin) packed into a long; a nullable
+ * variable after the dot is also stepped over when predicted, which handles
+ * empty rules without a separate completion pass.
+ */
+final class Earley {
+
+    private Earley() {
+    }
+
+    static boolean accepts(Grammar grammar, int[] tokens) {
+        List<Rule> rules = grammar.getRules();
+        List<LinkedHashSet<Long>> sets = new ArrayList<>();
+        List<List<Long>> queues = new ArrayList<>();
+        for (int i = 0; i <= tokens.length; i++) {
+            sets.add(new LinkedHashSet<>());
+            queues.add(new ArrayList<>());
+        }
+        add(sets, queues, 0, item(0, 0, 0));
+        for (int i = 0; i <= tokens.length; i++) {
+            List<Long> queue = queues.get(i);
+            for (int k = 0; k < queue.size(); k++) {
+                long item = queue.get(k);
+                int rule = rule(item);
+                int dot = dot(item);
+                int origin = origin(item);
+                int[] right = rules.get(rule).getRightIds();
+                if (dot < right.length) {
+                    int symbol = right[dot];
+                    if (grammar.isVariable(symbol)) {
+                        for (Rule r : grammar.getRuledByLeftVariable(symbol)) {
+                            add(sets, queues, i, item(grammar.findRuleIndex(r), 0, i));
+                        }
+                        if (grammar.isNullable(symbol)) {
+                            add(sets, queues, i, item(rule, dot + 1, origin));
+                        }
+                    } else if (i < tokens.length && symbol == tokens[i]) {
+                        add(sets, queues, i + 1, item(rule, dot + 1, origin));
+                    }
+                } else {
+                    int left = rules.get(rule).getLeftId();
+                    for (long waiting : new ArrayList<>(sets.get(origin))) {
+                        int[] r = rules.get(rule(waiting)).getRightIds();
+                        if (dot(waiting) < r.length && r[dot(waiting)] == left) {
+                            add(sets, queues, i, item(rule(waiting), dot(waiting) + 1, origin(waiting)));
+                        }
+                    }
+                }
+            }
+        }
+        return sets.get(tokens.length).contains(item(0, rules.get(0).getRightIds().length, 0));
+    }
+
+    private static void add(List<LinkedHashSet<Long>> sets, List<List<Long>> queues, int i, long item) {
+        if (sets.get(i).add(item)) {
+            queues.get(i).add(item);
+        }
+    }
+
+    private static long item(int rule, int dot, int origin) {
+        return (long) rule << 40 | (long) dot << 24 | origin;
+    }
+
+    private static int rule(long item) {
+        return (int) (item >>> 40);
+    }
+
+    private static int dot(long item) {
+        return (int) (item >>> 24) & 0xFFFF;
+    }
+
+    private static int origin(long item) {
+        return (int) item & 0xFFFFFF;
+    }
+}
@@ -0,0 +1,104 @@
+package core;
+
+import LARA.LR1Parser;
+
+/**
+ * Compares GLRDriver with the Earley recognizer on every input up to a
+ * length, over small ambiguous and epsilon-heavy grammars, with canonical,
+ * LALR and converted LALR tables. Run with assertions off or on; a mismatch
+ * throws AssertionError.
+ */
+public final class GLRDriverTest {
+
+    private static final String[] GRAMMARS = {
+            "E -> E + E | E * E | ( E ) | id",
+            "S -> S S | a | epsilon",
+            "S -> if E then S | if E then S else S | other\nE -> b",
+            "S -> A S b | c\nA -> epsilon | a",
+            "S -> A x y | B x z\nA -> a\nB -> a",
+            "S -> A B C\nA -> epsilon | a\nB -> A A | b\nC -> A B | c",
+            "S -> X Y\nX -> a X | epsilon\nY -> a Y b | epsilon",
+            "S -> a C | C a d | d\nA -> a A C | d d\nB -> d | epsilon\nC -> A | a a B | epsilon",
+    };
+
+    // every input of a length is tried while there are at most this many,
+    // up to the longest length
+    private static final int MAX_INPUTS = 6000;
+    private static final int MAX_LENGTH = 12;
+
+    public static void main(String[] args) {
+        int inputs = 0;
+        for (String text : GRAMMARS) {
+            Grammar grammar = new Grammar(text);
+            LR1Parser clr = new LR1Parser(grammar);
+            clr.parseCLR1();
+            LR1Parser lalr = new LR1Parser(grammar);
+            lalr.parseLALR1();
+            GLRDriver[] drivers = {
+                    new GLRDriver(clr.getTables()),
+                    new GLRDriver(lalr.getTables()),
+                    new GLRDriver(LALRConverter.convert(clr).tables),
+            };
+            inputs += compareAll(grammar, drivers);
+        }
+
+        Grammar grammar = new Grammar(GRAMMARS[GRAMMARS.length - 1]);
+        LR1Parser parser = new LR1Parser(grammar);
+        parser.parseCLR1();
+        int[] tokens = ids(grammar, "a a a d d a d");
+        check(Earley.accepts(grammar, tokens), "reference rejects a a a d d a d");
+        check(new GLRDriver(parser.getTables()).parse(tokens), "GLR rejects a a a d d a d");
+        System.out.println("GLRDriverTest: " + inputs + " inputs agree");
+    }
+
+    private static int compareAll(Grammar grammar, GLRDriver[] drivers) {
+        int terminals = grammar.getEndMarkerId();
+        int count = 0;
+        for (int length = 0; length <= MAX_LENGTH && Math.pow(terminals, length) <= MAX_INPUTS; length++) {
+            int[] tokens = new int[length];
+            do {
+                boolean expected = Earley.accepts(grammar, tokens);
+                for (GLRDriver driver : drivers) {
+                    check(driver.parse(tokens) == expected, grammar.getRules().get(1) + ": "
+                            + text(grammar, tokens) + " should be " + (expected ? "accepted" : "rejected"));
+                }
+                count++;
+            } while (next(tokens, terminals));
+        }
+        return count;
+    }
+
+    // the next input of the same length in lexicographic order
+    private static boolean next(int[] tokens, int terminals) {
+        for (int i = tokens.length - 1; i >= 0; i--) {
+            if (++tokens[i] < terminals) {
+                return true;
+            }
+            tokens[i] = 0;
+        }
+        return false;
+    }
+
+    static int[] ids(Grammar grammar, String text) {
+        String[] words = text.split(" ");
+        int[] tokens = new int[words.length];
+        for (int i = 0; i < words.length; i++) {
+            tokens[i] = grammar.getSymbolId(words[i]);
+        }
+        return tokens;
+    }
+
+    static String text(Grammar grammar, int[] tokens) {
+        StringBuilder sb = new StringBuilder();
+        for (int token : tokens) {
+            sb.append(grammar.getSymbol(token)).append(' ');
+        }
+        return sb.toString().trim();
+    }
+
+    static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new AssertionError(message);
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package core;
+
+import LARA.LR1Parser;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.stream.Stream;
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+
+/**
+ * Compiles generated parsers with the system Java compiler, for grammars
+ * whose symbols hold comment ends, backslashes, unicode escapes and quotes,
+ * and checks that they agree with ParseDriver.
+ */
+public final class JavaGeneratorTest {
+
+    private static final String[] GRAMMARS = {
+            "E -> E + T | T\nT -> T * F | F\nF -> ( E ) | id",
+            "S -> \\u x */ S | \" \\ y | /* \\u000a */ | \\\\u0022 S",
+            "S -> A \\ud800 | epsilon\nA -> */ A \\ | @param \\n",
+    };
+
+    public static void main(String[] args) throws Exception {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        GLRDriverTest.check(compiler != null, "no system Java compiler");
+        Path directory = Files.createTempDirectory("generated");
+        try {
+            for (int i = 0; i < GRAMMARS.length; i++) {
+                Grammar grammar = new Grammar(GRAMMARS[i]);
+                LR1Parser parser = new LR1Parser(grammar);
+                GLRDriverTest.check(parser.parseLALR1(), GRAMMARS[i] + " is not LALR(1)");
+                String name = "Generated" + i;
+                Path source = directory.resolve("gen").resolve(name + ".java");
+                Files.createDirectories(source.getParent());
+                Files.write(source, new JavaGenerator(grammar, parser.getTables()).generate("gen", name)
+                        .getBytes(StandardCharsets.UTF_8));
+                int status = compiler.run(null, null, null, "-encoding", "UTF-8", "-d", directory.toString(),
+                        source.toString());
+                GLRDriverTest.check(status == 0, "generated parser " + i + " does not compile");
+                compare(directory, "gen." + name, grammar, parser.getTables());
+            }
+        } finally {
+            try (Stream<Path> files = Files.walk(directory)) {
+                files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+            }
+        }
+        System.out.println("JavaGeneratorTest: ok");
+    }
+
+    private static void compare(Path directory, String className, Grammar grammar, ParseTables tables)
+            throws Exception {
+        try (URLClassLoader loader = new URLClassLoader(new URL[]{directory.toUri().toURL()})) {
+            Class<?> type = loader.loadClass(className);
+            Object generated = type.getConstructor().newInstance();
+            Method parse = type.getMethod("parse", int[].class);
+            Method tokenId = type.getMethod("tokenId", String.class);
+            int terminals = grammar.getEndMarkerId();
+            for (int t = 0; t < terminals; t++) {
+                GLRDriverTest.check((int) tokenId.invoke(null, grammar.getSymbol(t)) == t,
+                        "terminal " + grammar.getSymbol(t) + " renamed");
+            }
+            ParseDriver driver = new ParseDriver(tables);
+            Random random = new Random(19);
+            int accepted = 0;
+            for (int i = 0; i < 3000; i++) {
+                int[] tokens = new int[random.nextInt(10)];
+                for (int k = 0; k < tokens.length; k++) {
+                    tokens[k] = random.nextInt(terminals);
+                }
+                boolean result = (boolean) parse.invoke(generated, (Object) tokens);
+                GLRDriverTest.check(result == driver.parse(tokens),
+                        className + " and the table driver disagree on " + GLRDriverTest.text(grammar, tokens));
+                accepted += result ? 1 : 0;
+            }
+            GLRDriverTest.check(accepted > 0, className + " accepted no input");
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package core;
+
+import LARA.LR1Parser;
+import java.util.Random;
+
+/**
+ * Checks that packing keeps every cell of dense tables, that default
+ * reductions keep the packed tables smaller than the comb of every row did,
+ * and that error recovery finds errors where it did without default
+ * reductions.
+ */
+public final class ParseTablesTest {
+
+    private static final String EXPRESSION = "E -> E + T | T\nT -> T * F | F\nF -> ( E ) | id";
+
+    private static final String POINTERS = "S -> L = R | R\nL -> * R | id\nR -> L";
+
+    public static void main(String[] args) {
+        checkCells(new Grammar(EXPRESSION));
+        checkCells(new Grammar(BytecodeCompilerTest.LANGUAGE));
+
+        // packed sizes of these tables when consistent rows were combed too
+        checkSize(EXPRESSION, false, 128);
+        checkSize(EXPRESSION, true, 208);
+        checkSize(BytecodeCompilerTest.LANGUAGE, false, 1802);
+        checkSize(BytecodeCompilerTest.LANGUAGE, true, 4748);
+
+        // errors found while the comb still held every row
+        checkErrors(POINTERS, true, "* = * = * *", 1, 3, 6);
+        checkErrors(POINTERS, false, "* = * = * *", 1, 3);
+        checkErrors(POINTERS, true, "* * id = = id id", 4, 6);
+        checkErrors(POINTERS, false, "= = id", 0, 1);
+        checkErrors(EXPRESSION, true, "id ) * ( id", 1, 5);
+        checkErrors(EXPRESSION, false, "+ + id * * ( id", 0, 1, 4, 7);
+        System.out.println("ParseTablesTest: ok");
+    }
+
+    /**
+     * Packs random dense tables, a third of whose rows hold a single
+     * reduction, and reads every cell back.
+     */
+    private static void checkCells(Grammar grammar) {
+        int terminals = grammar.getTerminalCount();
+        int variables = grammar.getVariableCount();
+        int rules = grammar.getRules().size();
+        Random random = new Random(17);
+        int states = 60;
+        int[][] actions = new int[states][terminals];
+        int[][] gotos = new int[states][variables];
+        for (int s = 0; s < states; s++) {
+            int reduce = ParseTables.reduce(random.nextInt(rules));
+            for (int t = 0; t < terminals; t++) {
+                if (random.nextInt(3) != 0) {
+                    continue;
+                }
+                if (s % 3 == 0) {
+                    actions[s][t] = reduce;
+                } else if (random.nextBoolean()) {
+                    actions[s][t] = ParseTables.shift(random.nextInt(states));
+                } else {
+                    actions[s][t] = ParseTables.reduce(random.nextInt(rules));
+                }
+            }
+            for (int v = 0; v < variables; v++) {
+                gotos[s][v] = random.nextInt(4) == 0 ? random.nextInt(states) : -1;
+            }
+        }
+        ParseTables tables = ParseTables.pack(grammar, actions, gotos);
+        for (int s = 0; s < states; s++) {
+            int reduce = tables.getDefaultReduction(s);
+            for (int t = 0; t < terminals; t++) {
+                GLRDriverTest.check(tables.explicitAction(s, t) == actions[s][t], "cell " + s + ", " + t + " lost");
+                if (reduce != ParseTables.ERROR) {
+                    GLRDriverTest.check(tables.action(s, t) == reduce, "state " + s + " has no default reduction");
+                } else {
+                    GLRDriverTest.check(tables.action(s, t) == actions[s][t], "cell " + s + ", " + t + " lost");
+                }
+            }
+            for (int v = 0; v < variables; v++) {
+                GLRDriverTest.check(tables.goTo(s, v) == gotos[s][v], "goto " + s + ", " + v + " lost");
+            }
+        }
+    }
+
+    private static void checkSize(String text, boolean canonical, int limit) {
+        ParseTables tables = tables(text, canonical);
+        GLRDriverTest.check(tables.getPackedSize() < limit,
+                tables.getStateCount() + " states pack into " + tables.getPackedSize() + " ints, not below " + limit);
+    }
+
+    private static void checkErrors(String text, boolean canonical, String input, long... positions) {
+        Grammar grammar = new Grammar(text);
+        ParseDriver driver = new ParseDriver(tables(text, canonical));
+        driver.setRecovery(true);
+        driver.reset();
+        for (int token : GLRDriverTest.ids(grammar, input)) {
+            driver.push(token);
+        }
+        driver.end();
+        GLRDriverTest.check(driver.getErrorCount() == positions.length, input + ": " + driver.getErrorCount()
+                + " errors, expected " + positions.length);
+        for (int i = 0; i < positions.length; i++) {
+            GLRDriverTest.check(driver.getErrorPosition(i) == positions[i], input + ": error " + i + " at "
+                    + driver.getErrorPosition(i) + ", expected " + positions[i]);
+        }
+    }
+
+    private static ParseTables tables(String text, boolean canonical) {
+        LR1Parser parser = new LR1Parser(new Grammar(text));
+        if (canonical) {
+            parser.parseCLR1();
+        } else {
+            parser.parseLALR1();
+        }
+        return parser.getTables();
+    }
+}
@@ -0,0 +1,111 @@
+package core;
+
+import LARA.LR1Parser;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Reads back written tables, and checks that truncated or damaged files
+ * are either refused with an IOException or give tables whose every cell
+ * can be looked up.
+ */
+public final class TableFileTest {
+
+    public static void main(String[] args) throws IOException {
+        Path file = Files.createTempFile("tables", ".lrt");
+        try {
+            // with conflict lists
+            Grammar grammar = new Grammar("E -> E + E | E * E | ( E ) | id");
+            roundTrip(file, grammar, tables(grammar));
+            Grammar language = new Grammar(BytecodeCompilerTest.LANGUAGE);
+            LR1Parser parser = new LR1Parser(language);
+            parser.parseCLR1();
+            roundTrip(file, language, parser.getTables().skipUnitReductions());
+
+            TableFile.write(file, grammar, tables(grammar));
+            byte[] bytes = Files.readAllBytes(file);
+            for (int length = 0; length < bytes.length; length++) {
+                Files.write(file, Arrays.copyOf(bytes, length));
+                refused(file, "cut to " + length + " bytes");
+            }
+            Files.write(file, Arrays.copyOf(bytes, bytes.length + 4));
+            refused(file, "with 4 bytes more");
+
+            // every count and length of the header one off, and negative
+            for (int i = 2; i < 7 + ParseTables.ARRAYS.length + ParseTables.CONFLICT_ARRAYS.length; i++) {
+                if (i == 6) {
+                    continue;
+                }
+                int value = ByteBuffer.wrap(bytes).getInt(4 * i);
+                for (int changed : new int[]{value - 1, value + 1, -value - 1}) {
+                    byte[] copy = bytes.clone();
+                    ByteBuffer.wrap(copy).putInt(4 * i, changed);
+                    Files.write(file, copy);
+                    refused(file, "header int " + i + " " + value + " changed to " + changed);
+                }
+            }
+
+            Random random = new Random(21);
+            for (int i = 0; i < 5000; i++) {
+                byte[] copy = bytes.clone();
+                copy[random.nextInt(copy.length)] = (byte) random.nextInt(256);
+                Files.write(file, copy);
+                try {
+                    lookUpAll(TableFile.read(file).getTables());
+                } catch (IOException e) {
+                    // refused
+                }
+            }
+        } finally {
+            Files.delete(file);
+        }
+        System.out.println("TableFileTest: ok");
+    }
+
+    private static ParseTables tables(Grammar grammar) {
+        LR1Parser parser = new LR1Parser(grammar);
+        parser.parseLALR1();
+        return parser.getTables();
+    }
+
+    private static void roundTrip(Path file, Grammar grammar, ParseTables tables) throws IOException {
+        TableFile.write(file, grammar, tables);
+        TableFile read = TableFile.read(file);
+        ParseTables copy = read.getTables();
+        GLRDriverTest.check(Arrays.deepEquals(copy.getArrays(), tables.getArrays())
+                && Arrays.deepEquals(copy.getConflictArrays(), tables.getConflictArrays())
+                && copy.skipsUnitReductions() == tables.skipsUnitReductions(), "tables changed in the file");
+        for (int id = 0; id < grammar.getSymbolCount(); id++) {
+            GLRDriverTest.check(read.getSymbols().get(id).equals(grammar.getSymbol(id)), "symbol " + id + " changed");
+        }
+    }
+
+    private static void refused(Path file, String what) {
+        try {
+            TableFile.read(file);
+        } catch (IOException e) {
+            return;
+        }
+        throw new AssertionError("file " + what + " was read");
+    }
+
+    private static void lookUpAll(ParseTables tables) {
+        for (int s = 0; s < tables.getStateCount(); s++) {
+            for (int t = 0; t < tables.getTerminalCount(); t++) {
+                tables.action(s, t);
+                tables.actions(s, t);
+            }
+            for (int v = 0; v < tables.getVariableCount(); v++) {
+                tables.goTo(s, v);
+            }
+        }
+        for (int r = 0; r < tables.getRuleCount(); r++) {
+            tables.getRuleLength(r);
+            tables.getRuleLeft(r);
+        }
+    }
+}